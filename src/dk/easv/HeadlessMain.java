@@ -0,0 +1,378 @@
+package dk.easv;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.match.Coordinator;
+import dk.easv.bll.match.GamePlayer;
+import dk.easv.bll.match.League;
+import dk.easv.bll.match.MatchListener;
+import dk.easv.bll.match.MatchRunner;
+import dk.easv.bll.match.OpeningSuite;
+import dk.easv.bll.match.Sprt;
+import dk.easv.bll.match.Worker;
+import dk.easv.dal.DynamicBotClassHandler;
+import dk.easv.dal.GameLog;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Runs bot vs bot simulations from the command line, without JavaFX.
+ * <pre>
+ * java dk.easv.HeadlessMain [options] bot1 bot2
+ *   --games N      number of games to play, default 1000
+ *   --time MS      time per move in milliseconds, default 1000. A bot that
+ *                  goes over it loses the game, 0 turns the limit off
+ *   --threads N    number of worker threads, default the number of cores
+ *   --concurrent N play up to N games at once, for remote bots that mostly
+ *                  wait for their server, local bots still think on at most
+ *                  one thread per core
+ *   --out FILE     write one line per game to the file instead of stdout
+ *   --log FILE     append the moves of every game to a GameLog
+ *   --sprt E0 E1   stop as soon as a sequential probability ratio test
+ *                  decides whether bot1 is E0 or E1 Elo stronger than bot2,
+ *                  --games is then the most games to play
+ *   --alpha A      chance of a false H1 in the test, default 0.05
+ *   --beta B       chance of a false H0 in the test, default 0.05
+ *   --openings N   play from N generated openings, each twice with the
+ *                  colours swapped, a pair counts as one sample in the test
+ *   --plies P      number of moves in generated openings, default 4
+ *   --openings-file FILE  play from the openings in the file instead
+ *   --seed S       master seed, a run with the same seed and options plays
+ *                  the same games if the bots use IGameState.getRandom()
+ *                  and do not stop on the clock
+ *   --coordinator PORT  play the games on workers that connect to the
+ *                  port instead of in this process
+ *   --batch N      number of games handed to a worker at a time, default 64
+ *   --league       play a round-robin league between the given bots, or all
+ *                  bots in dk.easv.bll.bot when none are given, --games is
+ *                  then the number of games per pairing and colour order,
+ *                  the options of a single match such as --out and --log
+ *                  can not be used with it
+ * </pre>
+ * Bots are given by class name, names without a package are looked up in
+ * dk.easv.bll.bot. The totals are printed to stdout when the match is over,
+ * for a league the table ranked by Elo rating.
+ * <pre>
+ * java dk.easv.HeadlessMain --worker HOST:PORT [--threads N | --concurrent N]
+ * </pre>
+ * Plays games for the coordinator at HOST:PORT until its match is over.
+ * The coordinator decides the bots and all other settings.
+ */
+public class HeadlessMain {
+
+    private static final String BOT_PACKAGE = "dk.easv.bll.bot.";
+    // Generated openings are the same in every run without --seed
+    private static final long OPENING_SEED = 1;
+
+    public static void main(String[] args) throws IOException {
+        long games = 1000;
+        int timePerMove = GamePlayer.TIME_PER_MOVE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = null;
+        String logFile = null;
+        int concurrent = 0;
+        double[] sprtElo = null;
+        double alpha = 0.05;
+        double beta = 0.05;
+        int openingCount = 0;
+        int plies = 4;
+        String openingsFile = null;
+        Long seed = null;
+        int coordinatorPort = -1;
+        int batchSize = Coordinator.DEFAULT_BATCH_SIZE;
+        String worker = null;
+        boolean league = false;
+        List<String> bots = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--games": games = Long.parseLong(args[++i]); break;
+                    case "--time": timePerMove = Integer.parseInt(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--concurrent": concurrent = Integer.parseInt(args[++i]); break;
+                    case "--out": out = args[++i]; break;
+                    case "--log": logFile = args[++i]; break;
+                    case "--sprt": sprtElo = new double[]{Double.parseDouble(args[++i]), Double.parseDouble(args[++i])}; break;
+                    case "--alpha": alpha = Double.parseDouble(args[++i]); break;
+                    case "--beta": beta = Double.parseDouble(args[++i]); break;
+                    case "--openings": openingCount = Integer.parseInt(args[++i]); break;
+                    case "--plies": plies = Integer.parseInt(args[++i]); break;
+                    case "--openings-file": openingsFile = args[++i]; break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--coordinator": coordinatorPort = Integer.parseInt(args[++i]); break;
+                    case "--batch": batchSize = Integer.parseInt(args[++i]); break;
+                    case "--worker": worker = args[++i]; break;
+                    case "--league": league = true; break;
+                    default: bots.add(args[i]);
+                }
+            }
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            usage();
+            return;
+        }
+        if (threads < 1 || concurrent < 0 || batchSize < 1) {
+            usage();
+            return;
+        }
+        if (worker != null) {
+            if (!bots.isEmpty() || league)
+                usage();
+            runWorker(worker, threads, concurrent);
+            return;
+        }
+        // A league only prints its table, it has no per-game output
+        boolean matchOnly = sprtElo != null || openingCount > 0 || openingsFile != null || coordinatorPort >= 0
+                || out != null || logFile != null;
+        if ((!league && bots.size() != 2) || (league && (bots.size() == 1 || matchOnly))
+                || (coordinatorPort >= 0 && sprtElo != null)) {
+            usage();
+            return;
+        }
+
+        List<Class<? extends IBot>> botClasses = new ArrayList<>();
+        try {
+            for (String bot : bots)
+                botClasses.add(botClass(bot));
+            if (league && botClasses.isEmpty()) {
+                for (IBot bot : DynamicBotClassHandler.loadBotList())
+                    botClasses.add(bot.getClass());
+            }
+        }
+        catch (ClassNotFoundException | ClassCastException ex) {
+            System.err.println("Unknown bot: " + ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        catch (InstantiationException | IllegalAccessException ex) {
+            System.err.println("Could not load the bots: " + ex.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        if (league) {
+            runLeague(botClasses, games, timePerMove, threads, concurrent, seed);
+            return;
+        }
+        Class<? extends IBot> bot1 = botClasses.get(0);
+        Class<? extends IBot> bot2 = botClasses.get(1);
+
+        PrintWriter results = out == null
+                ? new PrintWriter(new OutputStreamWriter(System.out))
+                : new PrintWriter(new FileWriter(out));
+        results.println("player0,player1,winner");
+        GameLog log = logFile == null ? null : new GameLog(Paths.get(logFile));
+
+        OpeningSuite openings = null;
+        try {
+            if (openingsFile != null)
+                openings = OpeningSuite.load(Paths.get(openingsFile));
+            else if (openingCount > 0)
+                openings = OpeningSuite.generate(openingCount, plies, seed == null ? OPENING_SEED : seed);
+        }
+        catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        Consumer<GameResult> record = result -> {
+            synchronized (results) {
+                results.println(result.getPlayer0() + "," + result.getPlayer1() + "," + result.getWinner());
+            }
+            if (log != null) {
+                try {
+                    log.append(result);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+
+        if (coordinatorPort >= 0) {
+            runCoordinator(bot1, bot2, bots, games, timePerMove, coordinatorPort, batchSize, seed, openings, record);
+            synchronized (results) {
+                results.flush();
+                if (out != null)
+                    results.close();
+            }
+            if (log != null)
+                log.close();
+            return;
+        }
+
+        MatchRunner match = new MatchRunner(bot1, bot2, games);
+        match.setTimePerMove(timePerMove);
+        if (seed != null)
+            match.setSeed(seed);
+        Sprt sprt = null;
+        if (sprtElo != null) {
+            try {
+                sprt = new Sprt(sprtElo[0], sprtElo[1], alpha, beta);
+            }
+            catch (IllegalArgumentException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(2);
+                return;
+            }
+            match.setSprt(sprt);
+        }
+        match.setOpeningSuite(openings);
+        match.setListener(new MatchListener() {
+            @Override
+            public void gameFinished(GameResult result) {
+                try {
+                    record.accept(result);
+                }
+                catch (UncheckedIOException ex) {
+                    match.cancel();
+                    throw ex;
+                }
+            }
+
+            @Override
+            public void matchFinished(MatchRunner match) {
+            }
+        });
+
+        ForkJoinPool pool = concurrent > 0 ? null : new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        if (pool == null)
+            match.startConcurrent(concurrent);
+        else
+            match.start(pool);
+        match.await();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (pool != null)
+            pool.shutdown();
+
+        synchronized (results) {
+            results.flush();
+            if (out != null)
+                results.close();
+        }
+        if (log != null)
+            log.close();
+        System.out.println(bots.get(0) + " vs " + bots.get(1) + " | "
+                + "w/w/t " + match.getWinsBot1() + "/" + match.getWinsBot2() + "/" + match.getTies()
+                + " | " + match.getGamesPlayed() + " games in " + millis + " ms");
+        if (openings != null) {
+            long[] pairs = match.getPairs();
+            System.out.println(openings.size() + " openings | pairs scoring 0/0.5/1/1.5/2 for " + bots.get(0) + " "
+                    + pairs[0] + "/" + pairs[1] + "/" + pairs[2] + "/" + pairs[3] + "/" + pairs[4]);
+        }
+        if (sprt != null) {
+            System.out.printf("SPRT elo0 %.1f elo1 %.1f | %s | LLR %.2f [%.2f, %.2f]%n", sprt.getElo0(), sprt.getElo1(),
+                    match.getDecision(), match.getLlr(), sprt.getLowerBound(), sprt.getUpperBound());
+        }
+    }
+
+    private static void runCoordinator(Class<? extends IBot> bot1, Class<? extends IBot> bot2, List<String> bots,
+                                       long games, int timePerMove, int port, int batchSize, Long seed,
+                                       OpeningSuite openings, Consumer<GameResult> record) throws IOException {
+        try (Coordinator coordinator = new Coordinator(bot1, bot2, games, port)) {
+            coordinator.setTimePerMove(timePerMove);
+            coordinator.setBatchSize(batchSize);
+            coordinator.setOpeningSuite(openings);
+            if (seed != null)
+                coordinator.setSeed(seed);
+            coordinator.setResultHandler(result -> {
+                try {
+                    record.accept(result);
+                }
+                catch (UncheckedIOException ex) {
+                    System.err.println("Could not record a game: " + ex.getCause().getMessage());
+                    coordinator.cancel();
+                }
+            });
+
+            System.err.println("Waiting for workers on port " + coordinator.getPort());
+            long start = System.nanoTime();
+            coordinator.start();
+            coordinator.await();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(bots.get(0) + " vs " + bots.get(1) + " | "
+                    + "w/w/t " + coordinator.getWinsBot1() + "/" + coordinator.getWinsBot2() + "/" + coordinator.getTies()
+                    + " | " + coordinator.getGamesPlayed() + " games in " + millis + " ms");
+        }
+    }
+
+    private static void runWorker(String coordinator, int threads, int concurrent) {
+        int colon = coordinator.lastIndexOf(':');
+        if (colon < 0)
+            usage();
+        Worker worker;
+        try {
+            worker = new Worker(coordinator.substring(0, colon), Integer.parseInt(coordinator.substring(colon + 1)));
+        }
+        catch (NumberFormatException ex) {
+            usage();
+            return;
+        }
+        worker.setThreads(threads);
+        worker.setConcurrentGames(concurrent);
+        try {
+            long games = worker.run();
+            System.out.println(games + " games played for " + coordinator);
+        }
+        catch (IOException ex) {
+            System.err.println("Worker stopped: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void runLeague(List<Class<? extends IBot>> botClasses, long gamesPerPairing, int timePerMove, int threads,
+                                  int concurrent, Long seed) {
+        League league = new League(botClasses, gamesPerPairing);
+        league.setTimePerMove(timePerMove);
+        if (seed != null)
+            league.setSeed(seed);
+
+        ForkJoinPool pool = concurrent > 0 ? null : new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        if (pool == null)
+            league.startConcurrent(concurrent);
+        else
+            league.start(pool);
+        league.await();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (pool != null)
+            pool.shutdown();
+
+        System.out.printf("%-4s %-30s %7s %8s %8s %8s %8s%n", "#", "Bot", "Elo", "Games", "Wins", "Losses", "Ties");
+        int rank = 1;
+        for (League.Standing standing : league.getStandings()) {
+            System.out.printf("%-4d %-30s %7.0f %8d %8d %8d %8d%n", rank++, standing.getBotName(), standing.getRating(),
+                    standing.getGames(), standing.getWins(), standing.getLosses(), standing.getTies());
+        }
+        System.out.println(league.getGamesPlayed() + " games in " + millis + " ms");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends IBot> botClass(String name) throws ClassNotFoundException {
+        Class<?> clazz = Class.forName(name.contains(".") ? name : BOT_PACKAGE + name);
+        if (!IBot.class.isAssignableFrom(clazz))
+            throw new ClassCastException(name + " is not an IBot");
+        return (Class<? extends IBot>) clazz;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java dk.easv.HeadlessMain [--games N] [--time MS] [--threads N | --concurrent N] [--out FILE] [--log FILE]");
+        System.err.println("                                   [--sprt E0 E1 [--alpha A] [--beta B]]");
+        System.err.println("                                   [--openings N [--plies P] | --openings-file FILE] [--seed S]");
+        System.err.println("                                   [--coordinator PORT [--batch N]] bot1 bot2");
+        System.err.println("       java dk.easv.HeadlessMain --league [--games N] [--time MS] [--threads N | --concurrent N] [--seed S] [bot ...]");
+        System.err.println("       java dk.easv.HeadlessMain --worker HOST:PORT [--threads N | --concurrent N]");
+        System.exit(2);
+    }
+}
@@ -4,10 +4,8 @@ import dk.easv.bll.game.IGameState;
 import dk.easv.bll.move.IMove;
 
 import java.util.List;
-import java.util.Random;
 
 public class DavidBot implements IBot {
-    private final Random random = new Random();
 
     @Override
     public IMove doMove(IGameState state) {
@@ -39,7 +37,7 @@ public class DavidBot implements IBot {
         }
 
         // Random fallback
-        return availableMoves.get(random.nextInt(availableMoves.size()));
+        return availableMoves.get(state.getRandom().nextInt(availableMoves.size()));
     }
 
     private boolean isWinningMove(IGameState state, IMove move) {
@@ -0,0 +1,11 @@
+package dk.easv.bll.bot;
+
+/**
+ * A bot that does not think on this machine, but waits for its moves from a
+ * server, like TeacherBotREST. While it waits it uses no CPU, so the match
+ * runners let many remote games go on at once and only hold back the bots
+ * that compute their moves locally.
+ */
+public interface IRemoteBot extends IBot {
+
+}
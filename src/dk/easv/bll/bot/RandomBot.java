@@ -5,12 +5,10 @@ import dk.easv.bll.game.IGameState;
 import dk.easv.bll.move.IMove;
 
 import java.util.List;
-import java.util.Random;
 
 public class RandomBot implements IBot {
 
     private static final String BOTNAME = "Random Dude";
-    private Random rand = new Random();
 
     /**
      * Makes a turn. Edit this method to make your bot smarter.
@@ -22,7 +20,7 @@ public class RandomBot implements IBot {
     public IMove doMove(IGameState state) {
         List<IMove> moves = state.getField().getAvailableMoves();
         if (moves.size() > 0) {
-            return moves.get(rand.nextInt(moves.size())); /* get random move from available moves */
+            return moves.get(state.getRandom().nextInt(moves.size())); /* get random move from available moves */
         }
 
         return null;
@@ -6,11 +6,9 @@ import dk.easv.bll.move.IMove;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
 public class RandomBotOnSteroids implements IBot {
     private static final String BOTNAME = "Random on Steroids";
-    Random rand = new Random();
 
     @Override
     public IMove doMove(IGameState state) {
@@ -19,7 +17,7 @@ public class RandomBotOnSteroids implements IBot {
             return winMoves.get(0);
         List<IMove> moves = state.getField().getAvailableMoves();
         if (moves.size() > 0) {
-            return moves.get(rand.nextInt(moves.size())); /* get random move from available moves */
+            return moves.get(state.getRandom().nextInt(moves.size())); /* get random move from available moves */
         }
 
         return null;
@@ -1,6 +1,8 @@
 package dk.easv.bll.bot;
 
 import com.google.gson.Gson;
+import dk.easv.bll.field.Field;
+import dk.easv.bll.game.GameState;
 import dk.easv.bll.game.IGameState;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
@@ -20,14 +22,17 @@ import java.net.http.HttpResponse.BodyHandlers;
  * This client implementation requires the Google GSon library.
  *
  */
-public class TeacherBotREST implements IBot{
+public class TeacherBotREST implements IRemoteBot{
     private static final String BOT_NAME = "Teacher Bot (online)";
     // This bot requires a VPN connection to the EASV network
     private static final String SERVER_URI = "http://10.176.88.89:4567/doMove";
+    // Both are thread safe, so all games share one connection pool instead of opening a client per move
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+    private static final Gson GSON = new Gson();
+
     @Override
     public IMove doMove(IGameState state) {
-        Gson gson = new Gson();
-        String jsonState = gson.toJson(state);
+        String jsonState = GSON.toJson(toStringFieldState(state));
 
         HttpRequest request =
                 HttpRequest.newBuilder(URI.create(SERVER_URI))
@@ -36,10 +41,9 @@ public class TeacherBotREST implements IBot{
                 .PUT(HttpRequest.BodyPublishers.ofString(jsonState))
                 .build();
 
-        var client = HttpClient.newHttpClient();
         HttpResponse<String> response = null;
         try {
-            response = client.send(request, BodyHandlers.ofString());
+            response = CLIENT.send(request, BodyHandlers.ofString());
 
         // This is not the most graceful exception handling, but we want the bot to die
         // if the connection fails. Normally we could retry, however that would violate
@@ -51,10 +55,23 @@ public class TeacherBotREST implements IBot{
             throw new RuntimeException("Connection problems with "+ BOT_NAME,e);
         }
 
-        Move move = gson.fromJson(response.body(), Move.class);
+        Move move = GSON.fromJson(response.body(), Move.class);
         return move;
     }
 
+    // The server reads the JSON layout of a GameState on the string based Field,
+    // so snapshots and bitboards are copied into one before serialising.
+    private GameState toStringFieldState(IGameState state) {
+        GameState jsonState = new GameState(new Field());
+        jsonState.getField().setBoard(state.getField().getBoard());
+        jsonState.getField().setMacroboard(state.getField().getMacroboard());
+        jsonState.setMoveNumber(state.getMoveNumber());
+        jsonState.setRoundNumber(state.getRoundNumber());
+        jsonState.setTimePerMove(state.getTimePerMove());
+        jsonState.setZobristKey(state.getZobristKey());
+        return jsonState;
+    }
+
     @Override
     public String getBotName() {
         return BOT_NAME;
@@ -1,59 +1,63 @@
 package dk.easv.bll.bot;
 
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.BitField;
 import dk.easv.bll.field.IField;
-import dk.easv.bll.game.GameState;
 import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.RulesTable;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
+import dk.easv.bll.sim.Simulator;
 
 import java.util.*;
 
 public class ThirteenthReasonWhyBot implements IBot {
-    final int moveTimeMs = 1000;
+    final int moveTimeMs = 1000; // If the game sets no time per move
     private String BOT_NAME = "My Thirteenth Reason Why";
     private static final double EXPLORATION_CONSTANT = 1.41;
+    private Random rand; // The state's stream, so seeded runs repeat
     protected int[][] preferredMoves = {
             {1, 1}, //Center
             {0, 0}, {2, 2}, {0, 2}, {2, 0},  //Corners ordered across
             {0, 1}, {2, 1}, {1, 0}, {1, 2}}; //Outer Middles ordered across
 
-    private class Node {
-        final IMove move;
+    // Scratch positions, the tree only stores moves and replays them
+    private final Simulator root = new Simulator();
+    private final Simulator position = new Simulator();
+    private final Simulator scratch = new Simulator();
+    private final int[] legal = new int[81];
+    // Past this the search only plays out from the leaves, a bigger tree costs more in GC pauses than it gains
+    private static final int MAX_NODES = 200_000;
+    private int nodes;
+
+    private static class Node {
+        static final Node[] LEAF = new Node[0];
+
+        final int move; // cell index x*9 + y, -1 for the root
         final Node parent;
-        final List<Node> children = new ArrayList<>();
+        final boolean gameOver;
+        Node[] children = LEAF; // Sized to the legal moves on expansion, the tree gets big
         int visits = 0;
         double totalReward = 0;
-        final IGameState state;
 
-        public Node(IGameState state, Node parent, IMove move) {
-            this.state = ThirteenthReasonWhyBot.this.cloneState(state);
+        public Node(Node parent, int move, boolean gameOver) {
             this.parent = parent;
             this.move = move;
+            this.gameOver = gameOver;
         }
     }
 
-    private GameSimulator createSimulator(IGameState state) {
-        GameSimulator simulator = new GameSimulator(new GameState());
-        simulator.setGameOver(GameOverState.Active);
-        simulator.setCurrentPlayer(state.getMoveNumber() % 2);
-        simulator.getCurrentState().setRoundNumber(state.getRoundNumber());
-        simulator.getCurrentState().setMoveNumber(state.getMoveNumber());
-        simulator.getCurrentState().getField().setBoard(state.getField().getBoard());
-        simulator.getCurrentState().getField().setMacroboard(state.getField().getMacroboard());
-        return simulator;
-    }
-
     @Override
     public IMove doMove(IGameState state) {
-        List<IMove> winningMoves = getWinningMoves(state);
-        if (!winningMoves.isEmpty()) {
-            return winningMoves.get(0);
+        root.reset(state);
+        int winningMove = findLineMove(root, root.getCurrentPlayer());
+        if (winningMove >= 0) {
+            return new Move(winningMove / 9, winningMove % 9);
         }
 
-        List<IMove> blockingMoves = getBlockingMoves(state);
-        if (!blockingMoves.isEmpty()) {
-            return blockingMoves.get(0);
+        int blockingMove = findLineMove(root, 1 - root.getCurrentPlayer());
+        if (blockingMove >= 0) {
+            return new Move(blockingMove / 9, blockingMove % 9);
         }
 
         if (state.getMoveNumber() < 3) {
@@ -78,106 +82,71 @@ public class ThirteenthReasonWhyBot implements IBot {
         return mctsMove(state);
     }
 
-    private List<IMove> getWinningMoves(IGameState state) {
-        String player = state.getMoveNumber() % 2 == 0 ? "0" : "1";
-        List<IMove> avail = state.getField().getAvailableMoves();
-        List<IMove> winningMoves = new ArrayList<>();
-        for (IMove move : avail) {
-            if (isWinningMove(state, move, player)) {
-                winningMoves.add(move);
-            }
-        }
-        return winningMoves;
-    }
-
-    private List<IMove> getBlockingMoves(IGameState state) {
-        String opponent = state.getMoveNumber() % 2 == 0 ? "1" : "0";
-        List<IMove> avail = state.getField().getAvailableMoves();
-        List<IMove> blockingMoves = new ArrayList<>();
-        for (IMove move : avail) {
-            if (isWinningMove(state, move, opponent)) {
-                blockingMoves.add(move);
-            }
+    /**
+     * Finds a legal move that gives the player three in a row in its micro board.
+     * @return the first such move in the order of getAvailableMoves, as cell index x*9 + y, or -1
+     */
+    private int findLineMove(Simulator simulator, int player) {
+        BitField field = (BitField) simulator.getField();
+        int count = simulator.legalMoves(legal);
+        for (int i = 0; i < count; i++) {
+            int x = legal[i] / 9;
+            int y = legal[i] % 9;
+            int cell = BitField.cellIndex(x, y);
+            if (RulesTable.isLineThrough(field.getCells(player, BitField.microIndex(x, y)) | 1 << cell, cell))
+                return legal[i];
         }
-        return blockingMoves;
+        return -1;
     }
 
-    private boolean isWinningMove(IGameState state, IMove move, String player){
-        String[][] board = Arrays.stream(state.getField().getBoard()).map(String[]::clone).toArray(String[][]::new);
-
-        board[move.getX()][move.getY()] = player;
-
-        int startX = move.getX()-(move.getX()%3);
-        if(board[startX][move.getY()].equals(player))
-            if (board[startX][move.getY()].equals(board[startX+1][move.getY()]) &&
-                    board[startX+1][move.getY()].equals(board[startX+2][move.getY()]))
-                return true;
-
-        int startY = move.getY()-(move.getY()%3);
-        if(board[move.getX()][startY].equals(player))
-            if (board[move.getX()][startY].equals(board[move.getX()][startY+1]) &&
-                    board[move.getX()][startY+1].equals(board[move.getX()][startY+2]))
-                return true;
-
-
-        if(board[startX][startY].equals(player))
-            if (board[startX][startY].equals(board[startX+1][startY+1]) &&
-                    board[startX+1][startY+1].equals(board[startX+2][startY+2]))
-                return true;
-
-        if(board[startX][startY+2].equals(player))
-            if (board[startX][startY+2].equals(board[startX+1][startY+1]) &&
-                    board[startX+1][startY+1].equals(board[startX+2][startY]))
-                return true;
-
-        return false;
-    }
     private IMove mctsMove(IGameState state) {
-        Node root = new Node(state, null, null);
+        rand = state.getRandom();
+        Node rootNode = new Node(null, -1, root.isGameOver());
+        nodes = 0;
+        // A tenth of the time per move is left for GC pauses and getting the move back
+        long thinkMs = state.getTimePerMove() > 0 ? state.getTimePerMove() * 9L / 10 : moveTimeMs;
         long start = System.currentTimeMillis();
 
-        while (System.currentTimeMillis() - start < moveTimeMs) {
-            Node node = select(root);
-            GameSimulator simulator = createSimulator(node.state);
-            if (simulator.getGameOver() == GameOverState.Active) {
+        while (System.currentTimeMillis() - start < thinkMs) {
+            position.copyFrom(root);
+            Node node = select(rootNode);
+            if (!node.gameOver && nodes < MAX_NODES) {
                 expand(node);
             }
-            double reward = simulate(node);
+            double reward = simulate();
             backpropagate(node, reward);
         }
 
-        return root.children.stream()
+        int best = Arrays.stream(rootNode.children)
                 .max(Comparator.comparingDouble(n -> n.visits))
                 .orElseThrow().move;
+        return new Move(best / 9, best % 9);
     }
 
+    /**
+     * Walks down the tree to a leaf and plays the moves on the way on the position.
+     */
     private Node select(Node node) {
-        while (!node.children.isEmpty()) {
+        while (node.children.length > 0) {
             Node bestChild = null;
             double bestUct = Double.NEGATIVE_INFINITY;
-            List<Node> bestChildren = new ArrayList<>();
+            int ties = 0;
 
             for (Node child : node.children) {
                 double uct = calculateUct(child);
-                //System.out.println("UCT: " + uct + " for child " + child.move);
                 if (uct > bestUct) {
                     bestUct = uct;
-                    bestChildren.clear();
-                    bestChildren.add(child);
-                } else if (uct == bestUct) {
-                    bestChildren.add(child);
+                    bestChild = child;
+                    ties = 1;
+                } else if (uct == bestUct && rand.nextInt(++ties) == 0) {
+                    bestChild = child; // Every tied child is picked with the same chance
                 }
             }
-            //System.out.println("Best UCT: " + bestUct + " for children " + bestChildren);
-            Random rand = new Random();
-            node = bestChildren.get(rand.nextInt(bestChildren.size()));
+            node = bestChild;
+            position.play(node.move);
         }
         return node;
     }
-    private IGameState cloneState(IGameState state) {
-        GameSimulator simulator = createSimulator(state);
-        return simulator.getCurrentState();
-    }
 
     private double calculateUct(Node node) {
         if (node.visits == 0) return Double.MAX_VALUE;
@@ -186,49 +155,37 @@ public class ThirteenthReasonWhyBot implements IBot {
     }
 
     private void expand(Node node) {
-        List<IMove> moves = node.state.getField().getAvailableMoves();
-        for (IMove move : moves) {
-            GameSimulator simulator = createSimulator(node.state);
-            simulator.updateGame(move);
-            node.children.add(new Node(simulator.getCurrentState(), node, move));
+        int count = position.legalMoves(legal);
+        Node[] children = new Node[count];
+        for (int i = 0; i < count; i++) {
+            scratch.copyFrom(position);
+            scratch.play(legal[i]);
+            children[i] = new Node(node, legal[i], scratch.isGameOver());
         }
+        node.children = children;
+        nodes += count;
     }
 
-    private double simulate(Node node) {
-        IGameState simState = cloneState(node.state);
-        Random rand = new Random();
-
-        while (true) {
-            GameSimulator simulator = createSimulator(simState);
-            if (simulator.getGameOver() != GameOverState.Active) {
-                break;
-            }
-
-            List<IMove> moves = simState.getField().getAvailableMoves();
-            if (moves.isEmpty()) {
-                return 0.5; // Tie
-            }
-
+    /**
+     * Plays out the game from the position on the scratch simulator.
+     */
+    private double simulate() {
+        scratch.copyFrom(position);
 
-            List<IMove> winningMoves = getWinningMoves(simState);
-            if (!winningMoves.isEmpty()) {
+        while (!scratch.isGameOver()) {
+            if (findLineMove(scratch, scratch.getCurrentPlayer()) >= 0) {
                 return 1;
             }
 
-
-            List<IMove> blockingMoves = getBlockingMoves(simState);
-            if (!blockingMoves.isEmpty()) {
+            if (findLineMove(scratch, 1 - scratch.getCurrentPlayer()) >= 0) {
                 return 0;
             }
 
-            IMove randomMove = moves.get(rand.nextInt(moves.size()));
-            simulator.updateGame(randomMove);
-            simState = simulator.getCurrentState();
+            scratch.playRandom(rand);
         }
 
-        GameSimulator simulator = createSimulator(simState);
-        if (simulator.getGameOver() == GameOverState.Win) {
-            return simulator.getCurrentState().getMoveNumber() % 2 == node.state.getMoveNumber() % 2 ? 1 : 0;
+        if (scratch.getResult() != Simulator.TIE) {
+            return scratch.getMoveNumber() % 2 == position.getMoveNumber() % 2 ? 1 : 0;
         }
         return 0.5;
     }
@@ -241,233 +198,8 @@ public class ThirteenthReasonWhyBot implements IBot {
         }
     }
 
-    /*
-        The code below is a simulator for simulation of gameplay. This is needed for AI.
-
-        It is put here to make the Bot independent of the GameManager and its subclasses/enums
-
-        Now this class is only dependent on a few interfaces: IMove, IField, and IGameState
-
-        You could say it is self-contained. The drawback is that if the game rules change, the simulator must be
-        changed accordingly, making the code redundant.
-
-     */
-
     @Override
     public String getBotName() {
         return BOT_NAME;
     }
-
-    public enum GameOverState {
-        Active,
-        Win,
-        Tie
-    }
-
-    public class Move implements IMove {
-        int x = 0;
-        int y = 0;
-
-        public Move(int x, int y) {
-            this.x = x;
-            this.y = y;
-        }
-
-        @Override
-        public int getX() {
-            return x;
-        }
-
-        @Override
-        public int getY() {
-            return y;
-        }
-
-        @Override
-        public String toString() {
-            return "(" + x + "," + y + ")";
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Move move = (Move) o;
-            return x == move.x && y == move.y;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(x, y);
-        }
-    }
-
-    class GameSimulator {
-        private final IGameState currentState;
-        private int currentPlayer = 0; //player0 == 0 && player1 == 1
-        private volatile GameOverState gameOver = GameOverState.Active;
-
-        public void setGameOver(GameOverState state) {
-            gameOver = state;
-        }
-
-        public GameOverState getGameOver() {
-            return gameOver;
-        }
-
-        public void setCurrentPlayer(int player) {
-            currentPlayer = player;
-        }
-
-        public IGameState getCurrentState() {
-            return currentState;
-        }
-
-        public GameSimulator(IGameState currentState) {
-            this.currentState = currentState;
-        }
-
-        public Boolean updateGame(IMove move) {
-            if (!verifyMoveLegality(move))
-                return false;
-
-            updateBoard(move);
-            currentPlayer = (currentPlayer + 1) % 2;
-
-            return true;
-        }
-
-        private Boolean verifyMoveLegality(IMove move) {
-            IField field = currentState.getField();
-            boolean isValid = field.isInActiveMicroboard(move.getX(), move.getY());
-
-            if (isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
-            if (isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
-
-            if (isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
-                isValid = false;
-
-            return isValid;
-        }
-
-        private void updateBoard(IMove move) {
-            String[][] board = currentState.getField().getBoard();
-            board[move.getX()][move.getY()] = currentPlayer + "";
-            currentState.setMoveNumber(currentState.getMoveNumber() + 1);
-            if (currentState.getMoveNumber() % 2 == 0) {
-                currentState.setRoundNumber(currentState.getRoundNumber() + 1);
-            }
-            checkAndUpdateIfWin(move);
-            updateMacroboard(move);
-
-        }
-
-        private void checkAndUpdateIfWin(IMove move) {
-            String[][] macroBoard = currentState.getField().getMacroboard();
-            int macroX = move.getX() / 3;
-            int macroY = move.getY() / 3;
-
-            if (macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                    macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD)) {
-
-                String[][] board = getCurrentState().getField().getBoard();
-
-                if (isWin(board, move, "" + currentPlayer))
-                    macroBoard[macroX][macroY] = currentPlayer + "";
-                else if (isTie(board, move))
-                    macroBoard[macroX][macroY] = "TIE";
-
-                //Check macro win
-                if (isWin(macroBoard, new Move(macroX, macroY), "" + currentPlayer))
-                    gameOver = GameOverState.Win;
-                else if (isTie(macroBoard, new Move(macroX, macroY)))
-                    gameOver = GameOverState.Tie;
-            }
-
-        }
-
-        private boolean isTie(String[][] board, IMove move) {
-            int localX = move.getX() % 3;
-            int localY = move.getY() % 3;
-            int startX = move.getX() - (localX);
-            int startY = move.getY() - (localY);
-
-            for (int i = startX; i < startX + 3; i++) {
-                for (int k = startY; k < startY + 3; k++) {
-                    if (board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                            board[i][k].equals(IField.EMPTY_FIELD))
-                        return false;
-                }
-            }
-            return true;
-        }
-
-
-        public boolean isWin(String[][] board, IMove move, String currentPlayer) {
-            int localX = move.getX() % 3;
-            int localY = move.getY() % 3;
-            int startX = move.getX() - (localX);
-            int startY = move.getY() - (localY);
-
-            //check col
-            for (int i = startY; i < startY + 3; i++) {
-                if (!board[move.getX()][i].equals(currentPlayer))
-                    break;
-                if (i == startY + 3 - 1) return true;
-            }
-
-            //check row
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][move.getY()].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-
-            //check diagonal
-            if (localX == localY) {
-                //we're on a diagonal
-                int y = startY;
-                for (int i = startX; i < startX + 3; i++) {
-                    if (!board[i][y++].equals(currentPlayer))
-                        break;
-                    if (i == startX + 3 - 1) return true;
-                }
-            }
-
-            //check anti diagonal
-            if (localX + localY == 3 - 1) {
-                int less = 0;
-                for (int i = startX; i < startX + 3; i++) {
-                    if (!board[i][(startY + 2) - less++].equals(currentPlayer))
-                        break;
-                    if (i == startX + 3 - 1) return true;
-                }
-            }
-            return false;
-        }
-
-        private void updateMacroboard(IMove move) {
-            String[][] macroBoard = currentState.getField().getMacroboard();
-            for (int i = 0; i < macroBoard.length; i++)
-                for (int k = 0; k < macroBoard[i].length; k++) {
-                    if (macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                        macroBoard[i][k] = IField.EMPTY_FIELD;
-                }
-
-            int xTrans = move.getX() % 3;
-            int yTrans = move.getY() % 3;
-
-            if (macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-                macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-            else {
-                // Field is already won, set all fields not won to avail.
-                for (int i = 0; i < macroBoard.length; i++)
-                    for (int k = 0; k < macroBoard[i].length; k++) {
-                        if (macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                            macroBoard[i][k] = IField.AVAILABLE_FIELD;
-                    }
-            }
-        }
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+package dk.easv.bll.field;
+
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bitboard implementation of the IField.
+ * Every micro board is stored as one 9-bit mask per player, and the macroboard
+ * is stored as masks for won, tied and active micro boards.
+ *
+ * Micro boards are indexed (x/3)*3 + y/3 and cells inside a micro board are
+ * indexed (x%3)*3 + y%3, so bit i of a mask is the same cell as bit i of
+ * the macro masks on the 3x3 level.
+ *
+ * The String[][] returned by getBoard() and getMacroboard() is a view that is
+ * rebuilt when the masks change, writing to it does not change the field.
+ * Use setBoard, setMacroboard or the mask methods to change the field.
+ */
+public class BitField implements IField, IBitboard {
+
+    public static final int FULL_MASK = 0x1FF;
+    private static final String[] PLAYER_IDS = {"0", "1"};
+
+    private final int[][] cells = new int[2][9];
+    private final int[] won = new int[2];
+    private int tied;
+    private int active;
+
+    private final String[][] boardView = new String[9][9];
+    private final String[][] macroView = new String[3][3];
+    private boolean boardDirty = true;
+    private boolean macroDirty = true;
+
+    public BitField() {
+        clearBoard();
+    }
+
+    public BitField(BitField field) {
+        copyFrom(field);
+    }
+
+    public BitField(IBitboard bitboard) {
+        copyFrom(bitboard);
+    }
+
+    /**
+     * Copies all masks from another bitboard, e.g. to start a simulation from
+     * the snapshot handed to a bot.
+     * @param bitboard the bitboard to copy
+     */
+    public void copyFrom(IBitboard bitboard) {
+        for (int i = 0; i < 9; i++) {
+            cells[0][i] = bitboard.getCells(0, i);
+            cells[1][i] = bitboard.getCells(1, i);
+        }
+        won[0] = bitboard.getWonMask(0);
+        won[1] = bitboard.getWonMask(1);
+        tied = bitboard.getTiedMask();
+        active = bitboard.getActiveMask();
+        boardDirty = true;
+        macroDirty = true;
+    }
+
+    /**
+     * Copies all masks from another bitfield, without any allocation.
+     * @param field the field to copy
+     */
+    public void copyFrom(BitField field) {
+        System.arraycopy(field.cells[0], 0, cells[0], 0, 9);
+        System.arraycopy(field.cells[1], 0, cells[1], 0, 9);
+        won[0] = field.won[0];
+        won[1] = field.won[1];
+        tied = field.tied;
+        active = field.active;
+        boardDirty = true;
+        macroDirty = true;
+    }
+
+    @Override
+    public void clearBoard() {
+        for (int i = 0; i < 9; i++) {
+            cells[0][i] = 0;
+            cells[1][i] = 0;
+        }
+        won[0] = 0;
+        won[1] = 0;
+        tied = 0;
+        active = FULL_MASK;
+        boardDirty = true;
+        macroDirty = true;
+    }
+
+    @Override
+    public List<IMove> getAvailableMoves() {
+        List<IMove> availMoves = new ArrayList<>();
+
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int micro = microIndex(x, y);
+                if ((active & (1 << micro)) != 0
+                        && ((cells[0][micro] | cells[1][micro]) & (1 << cellIndex(x, y))) == 0) {
+                    availMoves.add(new Move(x, y));
+                }
+            }
+
+        return availMoves;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] buffer) {
+        int count = 0;
+        for (int x = 0; x < 9; x++) {
+            int rowBits = 7 << ((x % 3) * 3);
+            for (int microY = 0; microY < 3; microY++) {
+                int micro = (x / 3) * 3 + microY;
+                if ((active & (1 << micro)) == 0)
+                    continue;
+                int free = ~(cells[0][micro] | cells[1][micro]) & rowBits;
+                while (free != 0) {
+                    int bit = Integer.numberOfTrailingZeros(free);
+                    free &= free - 1;
+                    buffer[count++] = x * 9 + microY * 3 + bit % 3;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int availableMoveCount() {
+        int count = 0;
+        int boards = active;
+        while (boards != 0) {
+            int micro = Integer.numberOfTrailingZeros(boards);
+            boards &= boards - 1;
+            count += 9 - Integer.bitCount(cells[0][micro] | cells[1][micro]);
+        }
+        return count;
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        int micro = microIndex(column, row);
+        int bit = 1 << cellIndex(column, row);
+        if ((cells[0][micro] & bit) != 0)
+            return PLAYER_IDS[0];
+        if ((cells[1][micro] & bit) != 0)
+            return PLAYER_IDS[1];
+        return EMPTY_FIELD;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int i = 0; i < 9; i++) {
+            if ((cells[0][i] | cells[1][i]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (int i = 0; i < 9; i++) {
+            if ((cells[0][i] | cells[1][i]) != FULL_MASK)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        int xTrans = x>0 ? x/3 : 0;
+        int yTrans = y>0 ? y/3 : 0;
+        if (xTrans > 2 || yTrans > 2)
+            return false;
+        return (active & (1 << (xTrans * 3 + yTrans))) != 0;
+    }
+
+    @Override
+    public String[][] getBoard() {
+        if (boardDirty) {
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++) {
+                    boardView[x][y] = getPlayerId(x, y);
+                }
+            boardDirty = false;
+        }
+        return boardView;
+    }
+
+    @Override
+    public String[][] getMacroboard() {
+        if (macroDirty) {
+            for (int i = 0; i < 9; i++) {
+                int bit = 1 << i;
+                String value;
+                if ((won[0] & bit) != 0)
+                    value = PLAYER_IDS[0];
+                else if ((won[1] & bit) != 0)
+                    value = PLAYER_IDS[1];
+                else if ((tied & bit) != 0)
+                    value = TIE_FIELD;
+                else if ((active & bit) != 0)
+                    value = AVAILABLE_FIELD;
+                else
+                    value = EMPTY_FIELD;
+                macroView[i / 3][i % 3] = value;
+            }
+            macroDirty = false;
+        }
+        return macroView;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        for (int i = 0; i < 9; i++) {
+            cells[0][i] = 0;
+            cells[1][i] = 0;
+        }
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int player = playerFromId(board[x][y]);
+                if (player >= 0)
+                    cells[player][microIndex(x, y)] |= 1 << cellIndex(x, y);
+            }
+        boardDirty = true;
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        won[0] = 0;
+        won[1] = 0;
+        tied = 0;
+        active = 0;
+        for (int i = 0; i < 9; i++) {
+            String value = macroboard[i / 3][i % 3];
+            int player = playerFromId(value);
+            if (player >= 0)
+                won[player] |= 1 << i;
+            else if (TIE_FIELD.equals(value))
+                tied |= 1 << i;
+            else if (AVAILABLE_FIELD.equals(value))
+                active |= 1 << i;
+        }
+        macroDirty = true;
+    }
+
+    /**
+     * Places a player on the given cell. The cell is expected to be empty.
+     * @param x Column
+     * @param y Row
+     * @param player 0 or 1
+     */
+    public void place(int x, int y, int player) {
+        cells[player][microIndex(x, y)] |= 1 << cellIndex(x, y);
+        boardDirty = true;
+    }
+
+    /**
+     * Removes a player from the given cell, used to take back a move.
+     * @param x Column
+     * @param y Row
+     * @param player 0 or 1
+     */
+    public void remove(int x, int y, int player) {
+        cells[player][microIndex(x, y)] &= ~(1 << cellIndex(x, y));
+        boardDirty = true;
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param micro micro board index, (x/3)*3 + y/3
+     * @return the 9-bit mask of cells the player holds in the micro board
+     */
+    @Override
+    public int getCells(int player, int micro) {
+        return cells[player][micro];
+    }
+
+    /**
+     * @param micro micro board index, (x/3)*3 + y/3
+     * @return the 9-bit mask of occupied cells in the micro board
+     */
+    @Override
+    public int getOccupied(int micro) {
+        return cells[0][micro] | cells[1][micro];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return the 9-bit mask of micro boards won by the player
+     */
+    @Override
+    public int getWonMask(int player) {
+        return won[player];
+    }
+
+    /**
+     * @return the 9-bit mask of micro boards that ended in a tie
+     */
+    @Override
+    public int getTiedMask() {
+        return tied;
+    }
+
+    /**
+     * @return the 9-bit mask of micro boards that are open for the next move
+     */
+    @Override
+    public int getActiveMask() {
+        return active;
+    }
+
+    /**
+     * @return the 9-bit mask of micro boards that are won or tied
+     */
+    public int getDecidedMask() {
+        return won[0] | won[1] | tied;
+    }
+
+    /**
+     * Sets all cells a player holds in a micro board.
+     * @param player 0 or 1
+     * @param micro micro board index, (x/3)*3 + y/3
+     * @param mask 9-bit mask of cells
+     */
+    public void setCells(int player, int micro, int mask) {
+        cells[player][micro] = mask;
+        boardDirty = true;
+    }
+
+    public void setWon(int micro, int player) {
+        won[player] |= 1 << micro;
+        macroDirty = true;
+    }
+
+    public void setTied(int micro) {
+        tied |= 1 << micro;
+        macroDirty = true;
+    }
+
+    /**
+     * Marks a micro board as neither won nor tied, used to take back a move.
+     * @param micro micro board index, (x/3)*3 + y/3
+     */
+    public void clearDecided(int micro) {
+        won[0] &= ~(1 << micro);
+        won[1] &= ~(1 << micro);
+        tied &= ~(1 << micro);
+        macroDirty = true;
+    }
+
+    public void setActiveMask(int activeMask) {
+        active = activeMask;
+        macroDirty = true;
+    }
+
+    public static int microIndex(int x, int y) {
+        return (x / 3) * 3 + y / 3;
+    }
+
+    public static int cellIndex(int x, int y) {
+        return (x % 3) * 3 + y % 3;
+    }
+
+    private static int playerFromId(String id) {
+        if (PLAYER_IDS[0].equals(id))
+            return 0;
+        if (PLAYER_IDS[1].equals(id))
+            return 1;
+        return -1;
+    }
+}
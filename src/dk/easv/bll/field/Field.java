@@ -17,7 +17,6 @@ public class Field implements IField{
 
     @Override
     public void clearBoard() {
-        board = new String[9][9];
         for (int i = 0; i < board.length; i++)
             for (int k = 0; k < board[i].length; k++) {
                 board[i][k] = EMPTY_FIELD;
@@ -30,16 +29,68 @@ public class Field implements IField{
 
     @Override
     public List<IMove> getAvailableMoves() {
-        List<IMove> availMoves = new ArrayList<>();
+        int[] buffer = new int[81];
+        int count = getAvailableMoves(buffer);
+        List<IMove> availMoves = new ArrayList<>(count);
 
+        for (int i = 0; i < count; i++) {
+            availMoves.add(new Move(buffer[i] / 9, buffer[i] % 9));
+        }
+
+        return availMoves;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] buffer) {
+        int active = getActiveBoards();
+        int count = 0;
+        // Only the micro boards marked available are scanned, in board order
         for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
-                    availMoves.add(new Move(i,k));
+            for (int microY = 0; microY < 3; microY++) {
+                if ((active & (1 << ((i / 3) * 3 + microY))) == 0)
+                    continue;
+                for (int k = microY * 3; k < microY * 3 + 3; k++) {
+                    if(board[i][k].equals(EMPTY_FIELD)) {
+                        buffer[count++] = i * 9 + k;
+                    }
+                }
+            }
+        return count;
+    }
+
+    @Override
+    public int availableMoveCount() {
+        int active = getActiveBoards();
+        int count = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            if ((active & (1 << micro)) == 0)
+                continue;
+            int startX = (micro / 3) * 3;
+            int startY = (micro % 3) * 3;
+            for (int i = startX; i < startX + 3; i++)
+                for (int k = startY; k < startY + 3; k++) {
+                    if(board[i][k].equals(EMPTY_FIELD)) {
+                        count++;
+                    }
                 }
         }
+        return count;
+    }
 
-        return availMoves;
+    /**
+     * Reads the active micro boards from the macroboard. The arrays are handed
+     * out by getBoard() and getMacroboard() and may be written directly, so the
+     * set is read from the 3x3 macroboard on each call instead of being cached.
+     * @return 9-bit mask with bit (x/3)*3 + y/3 set for every available micro board
+     */
+    private int getActiveBoards() {
+        int active = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (macroBoard[i][k].equals(AVAILABLE_FIELD))
+                    active |= 1 << (i * 3 + k);
+            }
+        return active;
     }
 
     @Override
@@ -0,0 +1,246 @@
+package dk.easv.bll.field;
+
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only copy of a field packed into five longs.
+ * The cells of each player are stored as 81 bits over two longs, micro board
+ * m at bits m*9 (boards 0-6 in the first long, 7-8 in the second), using the
+ * same micro and cell indexes as BitField. The macroboard masks for won by
+ * player 0, won by player 1, tied and active are stored 9 bits apart in one long.
+ *
+ * Taking a snapshot of a BitField does not touch any strings, the String[][]
+ * views are only built when a bot asks for them. All methods that change the
+ * field throw UnsupportedOperationException.
+ */
+public final class FieldSnapshot implements IField, IBitboard {
+
+    private static final String[] PLAYER_IDS = {"0", "1"};
+
+    final long cells0Low;
+    final long cells0High;
+    final long cells1Low;
+    final long cells1High;
+    final long macro;
+
+    private String[][] boardView;
+    private String[][] macroView;
+
+    private FieldSnapshot(long cells0Low, long cells0High, long cells1Low, long cells1High, long macro) {
+        this.cells0Low = cells0Low;
+        this.cells0High = cells0High;
+        this.cells1Low = cells1Low;
+        this.cells1High = cells1High;
+        this.macro = macro;
+    }
+
+    /**
+     * Takes a snapshot of a field. A bitboard is copied straight from its masks,
+     * any other field is read through its string arrays.
+     * @param field the field to copy
+     * @return read-only snapshot
+     */
+    public static FieldSnapshot of(IField field) {
+        if (field instanceof FieldSnapshot)
+            return (FieldSnapshot) field;
+        if (field instanceof IBitboard)
+            return fromBitboard((IBitboard) field);
+
+        BitField bitField = new BitField();
+        bitField.setBoard(field.getBoard());
+        bitField.setMacroboard(field.getMacroboard());
+        return fromBitboard(bitField);
+    }
+
+    public static FieldSnapshot fromBitboard(IBitboard field) {
+        long cells0Low = 0, cells0High = 0, cells1Low = 0, cells1High = 0;
+        for (int micro = 0; micro < 7; micro++) {
+            cells0Low |= (long) field.getCells(0, micro) << (micro * 9);
+            cells1Low |= (long) field.getCells(1, micro) << (micro * 9);
+        }
+        for (int micro = 7; micro < 9; micro++) {
+            cells0High |= (long) field.getCells(0, micro) << ((micro - 7) * 9);
+            cells1High |= (long) field.getCells(1, micro) << ((micro - 7) * 9);
+        }
+        long macro = field.getWonMask(0)
+                | (long) field.getWonMask(1) << 9
+                | (long) field.getTiedMask() << 18
+                | (long) field.getActiveMask() << 27;
+        return new FieldSnapshot(cells0Low, cells0High, cells1Low, cells1High, macro);
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param micro micro board index, (x/3)*3 + y/3
+     * @return the 9-bit mask of cells the player holds in the micro board
+     */
+    @Override
+    public int getCells(int player, int micro) {
+        long packed;
+        if (micro < 7)
+            packed = (player == 0 ? cells0Low : cells1Low) >>> (micro * 9);
+        else
+            packed = (player == 0 ? cells0High : cells1High) >>> ((micro - 7) * 9);
+        return (int) packed & BitField.FULL_MASK;
+    }
+
+    @Override
+    public int getOccupied(int micro) {
+        return getCells(0, micro) | getCells(1, micro);
+    }
+
+    @Override
+    public int getWonMask(int player) {
+        return (int) (macro >>> (player * 9)) & BitField.FULL_MASK;
+    }
+
+    @Override
+    public int getTiedMask() {
+        return (int) (macro >>> 18) & BitField.FULL_MASK;
+    }
+
+    @Override
+    public int getActiveMask() {
+        return (int) (macro >>> 27) & BitField.FULL_MASK;
+    }
+
+    @Override
+    public void clearBoard() {
+        throw new UnsupportedOperationException("The field snapshot is read-only");
+    }
+
+    @Override
+    public List<IMove> getAvailableMoves() {
+        int[] buffer = new int[81];
+        int count = getAvailableMoves(buffer);
+        List<IMove> availMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            availMoves.add(new Move(buffer[i] / 9, buffer[i] % 9));
+        }
+        return availMoves;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] buffer) {
+        int active = getActiveMask();
+        int count = 0;
+        for (int x = 0; x < 9; x++) {
+            int rowBits = 7 << ((x % 3) * 3);
+            for (int microY = 0; microY < 3; microY++) {
+                int micro = (x / 3) * 3 + microY;
+                if ((active & (1 << micro)) == 0)
+                    continue;
+                int free = ~getOccupied(micro) & rowBits;
+                while (free != 0) {
+                    int bit = Integer.numberOfTrailingZeros(free);
+                    free &= free - 1;
+                    buffer[count++] = x * 9 + microY * 3 + bit % 3;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int availableMoveCount() {
+        int count = 0;
+        int boards = getActiveMask();
+        while (boards != 0) {
+            int micro = Integer.numberOfTrailingZeros(boards);
+            boards &= boards - 1;
+            count += 9 - Integer.bitCount(getOccupied(micro));
+        }
+        return count;
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        int micro = BitField.microIndex(column, row);
+        int bit = 1 << BitField.cellIndex(column, row);
+        if ((getCells(0, micro) & bit) != 0)
+            return PLAYER_IDS[0];
+        if ((getCells(1, micro) & bit) != 0)
+            return PLAYER_IDS[1];
+        return EMPTY_FIELD;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (cells0Low | cells0High | cells1Low | cells1High) == 0;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (int i = 0; i < 9; i++) {
+            if (getOccupied(i) != BitField.FULL_MASK)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        int xTrans = x>0 ? x/3 : 0;
+        int yTrans = y>0 ? y/3 : 0;
+        if (xTrans > 2 || yTrans > 2)
+            return false;
+        return (getActiveMask() & (1 << (xTrans * 3 + yTrans))) != 0;
+    }
+
+    /**
+     * @return a copy of the board, built on first use
+     */
+    @Override
+    public String[][] getBoard() {
+        if (boardView == null) {
+            String[][] board = new String[9][9];
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++) {
+                    board[x][y] = getPlayerId(x, y);
+                }
+            boardView = board;
+        }
+        return boardView;
+    }
+
+    /**
+     * @return a copy of the macroboard, built on first use
+     */
+    @Override
+    public String[][] getMacroboard() {
+        if (macroView == null) {
+            String[][] macroBoard = new String[3][3];
+            for (int i = 0; i < 9; i++) {
+                int bit = 1 << i;
+                String value;
+                if ((getWonMask(0) & bit) != 0)
+                    value = PLAYER_IDS[0];
+                else if ((getWonMask(1) & bit) != 0)
+                    value = PLAYER_IDS[1];
+                else if ((getTiedMask() & bit) != 0)
+                    value = TIE_FIELD;
+                else if ((getActiveMask() & bit) != 0)
+                    value = AVAILABLE_FIELD;
+                else
+                    value = EMPTY_FIELD;
+                macroBoard[i / 3][i % 3] = value;
+            }
+            macroView = macroBoard;
+        }
+        return macroView;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        throw new UnsupportedOperationException("The field snapshot is read-only");
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        throw new UnsupportedOperationException("The field snapshot is read-only");
+    }
+}
@@ -0,0 +1,38 @@
+package dk.easv.bll.field;
+
+/**
+ * Mask access to a field stored as bitboards.
+ * Micro boards are indexed (x/3)*3 + y/3 and cells inside a micro board are
+ * indexed (x%3)*3 + y%3, every mask is 9 bits.
+ */
+public interface IBitboard {
+
+    /**
+     * @param player 0 or 1
+     * @param micro micro board index
+     * @return the cells the player holds in the micro board
+     */
+    int getCells(int player, int micro);
+
+    /**
+     * @param micro micro board index
+     * @return the cells taken by either player in the micro board
+     */
+    int getOccupied(int micro);
+
+    /**
+     * @param player 0 or 1
+     * @return the micro boards won by the player
+     */
+    int getWonMask(int player);
+
+    /**
+     * @return the micro boards that ended in a tie
+     */
+    int getTiedMask();
+
+    /**
+     * @return the micro boards open for the next move
+     */
+    int getActiveMask();
+}
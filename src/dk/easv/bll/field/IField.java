@@ -11,6 +11,7 @@ public interface IField {
 
     String AVAILABLE_FIELD = "-1";
     String EMPTY_FIELD = ".";
+    String TIE_FIELD = "TIE";
 
     /**
      * Clears the board
@@ -24,6 +25,32 @@ public interface IField {
      */
     List<IMove> getAvailableMoves();
 
+    /**
+     * Writes the currently available moves into the buffer without allocating,
+     * in the same order as getAvailableMoves(). Each move is stored as the
+     * cell index x*9 + y.
+     * The default builds the moves from getAvailableMoves(), so it allocates;
+     * fields that can list their moves cheaper override it.
+     * @param buffer Buffer with room for at least 81 moves
+     * @return Number of moves written to the buffer
+     */
+    default int getAvailableMoves(int[] buffer) {
+        int count = 0;
+        for (IMove move : getAvailableMoves())
+            buffer[count++] = move.getX() * 9 + move.getY();
+        return count;
+    }
+
+    /**
+     * Counts the currently available moves without allocating.
+     * The default counts the list of getAvailableMoves(), so it allocates;
+     * fields that can count their moves cheaper override it.
+     * @return Number of currently available moves
+     */
+    default int availableMoveCount() {
+        return getAvailableMoves().size();
+    }
+
     /**
      * Returns the player id on given column and row
      * @param column Column
@@ -51,11 +78,15 @@ public interface IField {
     Boolean isInActiveMicroboard(int x, int y);
 
     /**
+     * Some fields, e.g. BitField, return a read-only view, writing to it does
+     * not change the field. Use setBoard to change the board of any field.
      * @return the Board (the entire 9x9 board)
      */
     String[][] getBoard();
 
     /**
+     * Some fields, e.g. BitField, return a read-only view, writing to it does
+     * not change the field. Use setMacroboard to change the macroboard of any field.
      * @return the Macroboard (the overarching 3x3 board)
      */
     String[][] getMacroboard();
@@ -0,0 +1,194 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.move.IMove;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asks a bot for its move and holds it to the time per move of the game.
+ * The bot thinks on a thread of its own while the caller waits for the move.
+ * A bot that has not answered when the time per move and a short grace are
+ * up is interrupted and left behind, the caller goes on at once and the bot
+ * has run out of time. The grace keeps bots that stop exactly at the time
+ * limit from losing on scheduling jitter.
+ *
+ * Java can not stop a thread, the interrupt only asks the bot to stop. A bot
+ * that ignores it keeps running on the thread it was left behind on, and
+ * keeps burning a core, until its doMove returns, which may be never. Such
+ * moves are counted per bot, see hasMoveLeftBehind, so that the bot is not
+ * asked for another move while one of them still runs.
+ */
+public class BotWatchdog {
+
+    public static final int GRACE_MILLIS = 50;
+
+    private static final ExecutorService BOT_THREADS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "bot-move");
+        thread.setDaemon(true); // A bot that never returns must not keep the program running
+        return thread;
+    });
+
+    // Moves that ran out of time and are still running, per bot instance
+    private static final Map<IBot, Integer> LEFT_BEHIND = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private long overrunMillis = 0;
+
+    /**
+     * Asks the bot for its move, with the time per move of the state.
+     * A time per move of 0 or less means no limit, the bot then thinks on the calling thread.
+     * @param bot the bot to move
+     * @param state the state the bot sees
+     * @return the move, or null if the bot returned none or ran out of time
+     */
+    public IMove doMove(IBot bot, IGameState state) {
+        return doMove(bot, state, null);
+    }
+
+    /**
+     * Asks the bot for its move, with the time per move of the state.
+     * A time per move of 0 or less means no limit, the bot then thinks on the calling thread.
+     * @param bot the bot to move
+     * @param state the state the bot sees
+     * @param whenDone run once the bot has returned from doMove, on the thread it thought on,
+     *                 also when it was left behind, e.g. to give back what it holds while it
+     *                 thinks, or null
+     * @return the move, or null if the bot returned none or ran out of time
+     */
+    public IMove doMove(IBot bot, IGameState state, Runnable whenDone) {
+        overrunMillis = 0;
+        int timePerMove = state.getTimePerMove();
+        if (timePerMove <= 0) {
+            try {
+                return bot.doMove(state);
+            }
+            finally {
+                if (whenDone != null)
+                    whenDone.run();
+            }
+        }
+
+        long start = System.nanoTime();
+        BotMove task = new BotMove(bot, state, whenDone);
+        Future<IMove> move = BOT_THREADS.submit(task);
+        try {
+            return move.get(timePerMove + GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            task.leaveBehind();
+            overrunMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000 - timePerMove);
+            return null;
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(bot.getBotName() + " failed to move", cause);
+        }
+        catch (InterruptedException ex) {
+            task.leaveBehind();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + bot.getBotName(), ex);
+        }
+    }
+
+    /**
+     * @param bot a bot
+     * @return true while a move of this bot ran out of time and is still running
+     */
+    public static boolean hasMoveLeftBehind(IBot bot) {
+        return LEFT_BEHIND.containsKey(bot);
+    }
+
+    /**
+     * Forgets the overrun of the bot asked last, for a watchdog that is used again for a new game.
+     */
+    public void reset() {
+        overrunMillis = 0;
+    }
+
+    /**
+     * @return how many milliseconds the bot asked last went over its time per move, 0 if it was on time
+     */
+    public long getOverrunMillis() {
+        return overrunMillis;
+    }
+
+    /**
+     * @return true if the bot asked last ran out of time
+     */
+    public boolean isOverrun() {
+        return overrunMillis > 0;
+    }
+
+    /**
+     * One move of a bot on a bot thread. The task is never cancelled, so it
+     * always runs to the end and can tell when the bot has really returned.
+     */
+    private static final class BotMove implements Callable<IMove> {
+        private final IBot bot;
+        private final IGameState state;
+        private final Runnable whenDone;
+        private Thread thread = null;
+        private boolean returned = false;
+        private boolean leftBehind = false;
+
+        BotMove(IBot bot, IGameState state, Runnable whenDone) {
+            this.bot = bot;
+            this.state = state;
+            this.whenDone = whenDone;
+        }
+
+        @Override
+        public IMove call() {
+            synchronized (this) {
+                if (leftBehind) {
+                    // The caller gave up before the bot got a thread, it is not asked at all
+                    finish();
+                    return null;
+                }
+                thread = Thread.currentThread();
+            }
+            try {
+                return bot.doMove(state);
+            }
+            finally {
+                finish();
+            }
+        }
+
+        /**
+         * Interrupts the bot and counts the move as left behind until the bot returns.
+         */
+        synchronized void leaveBehind() {
+            if (returned || leftBehind)
+                return;
+            leftBehind = true;
+            LEFT_BEHIND.merge(bot, 1, Integer::sum);
+            if (thread != null)
+                thread.interrupt();
+        }
+
+        private void finish() {
+            synchronized (this) {
+                returned = true;
+                thread = null;
+                if (leftBehind)
+                    LEFT_BEHIND.computeIfPresent(bot, (key, running) -> running > 1 ? running - 1 : null);
+            }
+            if (whenDone != null)
+                whenDone.run();
+        }
+    }
+}
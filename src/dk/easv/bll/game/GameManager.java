@@ -1,6 +1,7 @@
 package dk.easv.bll.game;
 
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.BitField;
 import dk.easv.bll.field.IField;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
@@ -11,8 +12,9 @@ import dk.easv.bll.move.Move;
  * Note that initializing a game through the constructors means
  * that you have to create a new instance of the game manager
  * for every new game of a different type (e.g. Human vs Human, Human vs Bot or Bot vs Bot),
- * which may not be ideal for your solution, so you could consider refactoring
- * that into an (re-)initialize method instead.
+ * which may not be ideal for your solution. The reset methods start a new
+ * game on the same instance and state instead, with the same or other players,
+ * so a simulation can play any number of games without new objects.
  * @author mjl
  */
 public class GameManager {
@@ -31,6 +33,15 @@ public class GameManager {
         Win,
         Tie
     }
+
+    private static final GameOverState[] GAME_OVER_STATES = GameOverState.values();
+    // Layout of the undo record returned by makeMove
+    private static final int UNDO_ACTIVE_MASK = 0x1FF;
+    private static final int UNDO_GAME_OVER_SHIFT = 9;
+    private static final int UNDO_DECIDED_FLAG = 1 << 11;
+    // Micro board status, besides the id of the winning player
+    private static final int TIED = 2;
+    private static final int UNDECIDED = -1;
     
     private final IGameState currentState;
     private int currentPlayer = 0; //player0 == 0 && player1 == 1
@@ -38,6 +49,13 @@ public class GameManager {
     private IBot bot = null;
     private IBot bot2 = null;
     private volatile GameOverState gameOver = GameOverState.Active;
+    private int activeBoards; //micro boards open for the next move, bit (x/3)*3 + y/3
+    private final BotWatchdog watchdog = new BotWatchdog();
+    // The string board as masks for the dead draw check, kept up to date move by move
+    private final int[][] microCells = new int[2][9]; //cells of each player, [player][micro]
+    private final int[] wonMicro = new int[2];
+    private int tiedMicro;
+    private int maskedMove = -1; //move number the masks are up to date with, -1 to read them from the board
 
     public void setGameOver(GameOverState state) {
         gameOver = state;
@@ -66,6 +84,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState) {
         this.currentState = currentState;
+        activeBoards = readActiveBoards();
         mode = GameMode.HumanVsHuman;
     }
 
@@ -78,6 +97,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, boolean humanPlaysFirst) {
         this.currentState = currentState;
+        activeBoards = readActiveBoards();
         playerGoesFirst=humanPlaysFirst;
         mode = GameMode.HumanVsBot;
         this.bot = bot;
@@ -93,11 +113,57 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, IBot bot2) {
         this.currentState = currentState;
+        activeBoards = readActiveBoards();
         mode = GameMode.BotVsBot;
         this.bot = bot;
         this.bot2 = bot2;
     }
     
+    /**
+     * Starts a new game from an empty board with the same players and game mode.
+     * The field of the current state is cleared, the time per move is kept,
+     * and the overrun of the last bot move is forgotten.
+     */
+    public void reset()
+    {
+        currentState.getField().clearBoard();
+        currentState.setMoveNumber(0);
+        currentState.setRoundNumber(0);
+        currentState.setZobristKey(Zobrist.keyOf(currentState));
+        currentPlayer = 0;
+        gameOver = GameOverState.Active;
+        activeBoards = readActiveBoards();
+        maskedMove = -1;
+        watchdog.reset();
+    }
+
+    /**
+     * Starts a new Human vs Bot game from an empty board.
+     * @param bot The bot to play against in vsBot mode.
+     */
+    public void reset(IBot bot, boolean humanPlaysFirst)
+    {
+        reset();
+        playerGoesFirst = humanPlaysFirst;
+        mode = GameMode.HumanVsBot;
+        this.bot = bot;
+        this.bot2 = null;
+    }
+
+    /**
+     * Starts a new Bot vs Bot game from an empty board.
+     * @param bot The first bot to play.
+     * @param bot2 The second bot to play.
+     */
+    public void reset(IBot bot, IBot bot2)
+    {
+        reset();
+        playerGoesFirst = false;
+        mode = GameMode.BotVsBot;
+        this.bot = bot;
+        this.bot2 = bot2;
+    }
+
     /**
      * User input driven Update
      * @param move The next user dk.easv.bll.move
@@ -105,15 +171,82 @@ public class GameManager {
      */
     public Boolean updateGame(IMove move)
     {
-        if(!verifyMoveLegality(move)) 
-            return false;
-        
+        return makeMove(move) != -1;
+    }
+    
+    /**
+     * Plays a move and returns what is needed to take it back again with
+     * unmakeMove, so a search can walk a single mutable position instead of
+     * copying the state for every node.
+     * The undo record is packed into an int: bits 0-8 hold the micro boards that
+     * were active before the move, bits 9-10 the previous GameOverState and
+     * bit 11 is set when the move decided its micro board.
+     * @param move The move to play
+     * @return The undo record, or -1 if the move is not legal
+     */
+    public int makeMove(IMove move)
+    {
+        if(!verifyMoveLegality(move))
+            return -1;
+
+        int previousActive = activeBoards;
+        int undo = previousActive | gameOver.ordinal() << UNDO_GAME_OVER_SHIFT;
         updateBoard(move);
+        int status = getMicroboardStatus(move.getX() / 3, move.getY() / 3);
+        if(status != UNDECIDED)
+            undo |= UNDO_DECIDED_FLAG;
+        currentState.setZobristKey(currentState.getZobristKey()
+                ^ zobristDelta(move, currentPlayer, status, previousActive, activeBoards));
         currentPlayer = (currentPlayer + 1) % 2;
-        
-        return true;
+
+        return undo;
     }
-    
+
+    /**
+     * Takes back the last move played with makeMove. Moves must be taken back
+     * in the reverse order they were made.
+     * @param move The move that was played
+     * @param undo The undo record makeMove returned for the move
+     */
+    public void unmakeMove(IMove move, int undo)
+    {
+        currentPlayer = (currentPlayer + 1) % 2;
+        if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() - 1); }
+        currentState.setMoveNumber(currentState.getMoveNumber() - 1);
+        gameOver = GAME_OVER_STATES[(undo >> UNDO_GAME_OVER_SHIFT) & 3];
+        int previousActive = undo & UNDO_ACTIVE_MASK;
+        int status = (undo & UNDO_DECIDED_FLAG) != 0
+                ? getMicroboardStatus(move.getX() / 3, move.getY() / 3)
+                : UNDECIDED;
+        currentState.setZobristKey(currentState.getZobristKey()
+                ^ zobristDelta(move, currentPlayer, status, previousActive, activeBoards));
+
+        IField field = currentState.getField();
+        if(field instanceof BitField) {
+            BitField bitField = (BitField) field;
+            bitField.remove(move.getX(), move.getY(), currentPlayer);
+            if((undo & UNDO_DECIDED_FLAG) != 0)
+                bitField.clearDecided(BitField.microIndex(move.getX(), move.getY()));
+            bitField.setActiveMask(previousActive);
+            activeBoards = previousActive;
+            return;
+        }
+
+        field.getBoard()[move.getX()][move.getY()] = IField.EMPTY_FIELD;
+        String[][] macroBoard = field.getMacroboard();
+        if((undo & UNDO_DECIDED_FLAG) != 0)
+            macroBoard[move.getX() / 3][move.getY() / 3] = IField.EMPTY_FIELD;
+        setActiveBoards(macroBoard, previousActive);
+        if(maskedMove == currentState.getMoveNumber() + 1) {
+            int micro = (move.getX() / 3) * 3 + move.getY() / 3;
+            microCells[currentPlayer][micro] &= ~(1 << (move.getX() % 3) * 3 + move.getY() % 3);
+            wonMicro[0] &= ~(1 << micro);
+            wonMicro[1] &= ~(1 << micro);
+            tiedMicro &= ~(1 << micro);
+            maskedMove = currentState.getMoveNumber();
+        }
+    }
+
     /**
      * Non-User driven input, e.g. an update for playing a bot move.
      * @return Returns true if the update was successful, false otherwise.
@@ -126,13 +259,11 @@ public class GameManager {
         //Check if player is bot, if so, get bot input and update the state based on that.
         if(mode == GameMode.HumanVsBot && currentPlayer == 1 && playerGoesFirst)
         {
-             IMove botMove = bot.doMove(new GameState(currentState));
-             return updateGame(botMove);
+             return playBotMove(bot);
         }
         else if(mode == GameMode.HumanVsBot && !playerGoesFirst && currentPlayer == 0)
         {
-            IMove botMove = bot.doMove(new GameState(currentState));
-            return updateGame(botMove);
+            return playBotMove(bot);
         }
         
         //Check bot is not equal to null, and throw an exception if it is.
@@ -145,24 +276,45 @@ public class GameManager {
             assert(bot != null);
             assert(bot2 != null);
 
-            IMove botMove = currentPlayer == 0 ? bot.doMove(new GameState(currentState)) : bot2.doMove(new GameState(currentState));
-
-            return updateGame(botMove);
+            return playBotMove(currentPlayer == 0 ? bot : bot2);
         }
         return false;
     }
 
+    /**
+     * Asks the bot for its move, held to the time per move of the current state.
+     * @return false if the bot ran out of time or its move is not legal
+     */
+    private Boolean playBotMove(IBot player)
+    {
+        IMove botMove = watchdog.doMove(player, GameStateSnapshot.of(currentState));
+        if(botMove == null)
+            return false;
+        return updateGame(botMove);
+    }
+
+    /**
+     * @return how many milliseconds the last bot to move went over the time per move,
+     * 0 if it moved in time. A bot that went over has lost its turn.
+     */
+    public long getOverrunMillis()
+    {
+        return watchdog.getOverrunMillis();
+    }
+
 
 
     private Boolean verifyMoveLegality(IMove move)
     {
         IField field = currentState.getField();
-        boolean isValid=field.isInActiveMicroboard(move.getX(), move.getY());
+        boolean isValid = true;
 
-        if(isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
+        if(move.getX() < 0 || 9 <= move.getX()) isValid = false;
         if(isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
 
-        if(isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
+        if(isValid && !field.isInActiveMicroboard(move.getX(), move.getY())) isValid = false;
+
+        if(isValid && !field.getPlayerId(move.getX(), move.getY()).equals(IField.EMPTY_FIELD))
             isValid=false;
 
         return isValid;
@@ -170,15 +322,54 @@ public class GameManager {
     
     private void updateBoard(IMove move)
     {
+        if(currentState.getField() instanceof BitField) {
+            updateBitBoard((BitField) currentState.getField(), move);
+            return;
+        }
         String[][] board = currentState.getField().getBoard();
         board[move.getX()][move.getY()]=currentPlayer+"";
         currentState.setMoveNumber(currentState.getMoveNumber() + 1);
         if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
+        updateMasks(move);
         checkAndUpdateIfWin(move);
         updateMacroboard(move);
 
     }
 
+    /**
+     * Same rules as updateBoard, checkAndUpdateIfWin and updateMacroboard,
+     * but worked out on the masks of a BitField instead of the string arrays.
+     */
+    private void updateBitBoard(BitField field, IMove move)
+    {
+        int micro = BitField.microIndex(move.getX(), move.getY());
+        field.place(move.getX(), move.getY(), currentPlayer);
+        currentState.setMoveNumber(currentState.getMoveNumber() + 1);
+        if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
+
+        if((field.getDecidedMask() & (1 << micro)) == 0) {
+            if(RulesTable.isLine(field.getCells(currentPlayer, micro)))
+                field.setWon(micro, currentPlayer);
+            else if(RulesTable.isFull(field.getOccupied(micro)))
+                field.setTied(micro);
+
+            //Check macro win
+            if(RulesTable.isLine(field.getWonMask(currentPlayer)))
+                gameOver = GameOverState.Win;
+            else if(RulesTable.isFull(field.getDecidedMask()) || RulesTable.isDeadDraw(field))
+                gameOver = GameOverState.Tie;
+        }
+
+        // Send the opponent to the board matching the cell, or everywhere if it is decided
+        int next = BitField.cellIndex(move.getX(), move.getY());
+        int decided = field.getDecidedMask();
+        if((decided & (1 << next)) == 0)
+            activeBoards = 1 << next;
+        else
+            activeBoards = RulesTable.FULL_MASK & ~decided;
+        field.setActiveMask(activeBoards);
+    }
+
     private void checkAndUpdateIfWin(IMove move) {
         String[][] macroBoard = currentState.getField().getMacroboard();
         int macroX = move.getX()/3;
@@ -188,102 +379,155 @@ public class GameManager {
                 macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD) ) {
 
             String[][] board = getCurrentState().getField().getBoard();
+            int micro = macroX * 3 + macroY;
 
-            if(isWin(board,move, ""+currentPlayer))
+            if(isWin(board,move, ""+currentPlayer)) {
                 macroBoard[macroX][macroY] = currentPlayer + "";
-            else if(isTie(board,move))
-                macroBoard[macroX][macroY] = "TIE";
+                wonMicro[currentPlayer] |= 1 << micro;
+            }
+            else if(isTie(board,move)) {
+                macroBoard[macroX][macroY] = IField.TIE_FIELD;
+                tiedMicro |= 1 << micro;
+            }
+            else {
+                // The macroboard did not change, only the opponent's last line here may just have been blocked
+                int mine = microCells[currentPlayer][micro];
+                int cell = (move.getX() % 3) * 3 + move.getY() % 3;
+                if(RulesTable.hasOpenLine(mine & ~(1 << cell)) && !RulesTable.hasOpenLine(mine)
+                        && RulesTable.isDeadDraw(wonMicro[0], wonMicro[1], tiedMicro, microCells))
+                    gameOver = GameOverState.Tie;
+                return;
+            }
             
             //Check macro win
             if(isWin(macroBoard,new Move(macroX,macroY), ""+currentPlayer))
                 gameOver = GameOverState.Win;
-            else if(isTie(macroBoard,new Move(macroX,macroY)))
+            else if(isTie(macroBoard,new Move(macroX,macroY))
+                    || RulesTable.isDeadDraw(wonMicro[0], wonMicro[1], tiedMicro, microCells))
                 gameOver = GameOverState.Tie;
         }
 
     }
 
-    private boolean isTie(String[][] board, IMove move){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        for (int i = startX; i < startX+3; i++) {
-            for (int k = startY; k < startY+3; k++) {
-                if(board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                        board[i][k].equals(IField.EMPTY_FIELD) )
-                    return false;
+    /**
+     * Adds the move just placed on the string board to the masks of the dead
+     * draw check. Only when the masks are behind, e.g. for a loaded game or
+     * after the board was changed elsewhere, they are read from the board again.
+     */
+    private void updateMasks(IMove move) {
+        int moveNumber = currentState.getMoveNumber();
+        if(maskedMove == moveNumber - 1) {
+            int micro = (move.getX() / 3) * 3 + move.getY() / 3;
+            microCells[currentPlayer][micro] |= 1 << (move.getX() % 3) * 3 + move.getY() % 3;
+        }
+        else {
+            String[][] macroBoard = currentState.getField().getMacroboard();
+            String[][] board = currentState.getField().getBoard();
+            wonMicro[0] = RulesTable.maskOf(macroBoard, 0, 0, "0");
+            wonMicro[1] = RulesTable.maskOf(macroBoard, 0, 0, "1");
+            tiedMicro = RulesTable.maskOf(macroBoard, 0, 0, IField.TIE_FIELD);
+            for(int micro = 0; micro < 9; micro++) {
+                microCells[0][micro] = RulesTable.maskOf(board, (micro / 3) * 3, (micro % 3) * 3, "0");
+                microCells[1][micro] = RulesTable.maskOf(board, (micro / 3) * 3, (micro % 3) * 3, "1");
             }
         }
-        return true;
+        maskedMove = moveNumber;
+    }
+
+    private boolean isTie(String[][] board, IMove move){
+        return RulesTable.isFull(RulesTable.occupiedMaskOf(board, move.getX(), move.getY()));
     }
 
 
     public static boolean isWin(String[][] board, IMove move, String currentPlayer){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        //check col
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(currentPlayer))
-                break;
-            if (i == startY + 3 - 1) return true;
-        }
+        int mask = RulesTable.maskOf(board, move.getX(), move.getY(), currentPlayer);
+        return RulesTable.isLineThrough(mask, (move.getX() % 3) * 3 + move.getY() % 3);
+    }
+    
+    private void updateMacroboard(IMove move)
+    {
+        String[][] macroBoard = currentState.getField().getMacroboard();
+        int xTrans = move.getX()%3;
+        int yTrans = move.getY()%3;
 
-        //check row
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(currentPlayer))
-                break;
-            if (i == startX + 3 - 1) return true;
-        }
+        int nextActive;
+        if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD) ||
+                macroBoard[xTrans][yTrans].equals(IField.AVAILABLE_FIELD))
+            nextActive = 1 << (xTrans * 3 + yTrans);
+        else // Field is already won, set all fields not won to avail.
+            nextActive = RulesTable.FULL_MASK & ~RulesTable.occupiedMaskOf(macroBoard, 0, 0);
 
-        //check diagonal
-        if (localX == localY) {
-            //we're on a diagonal
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
+        setActiveBoards(macroBoard, nextActive);
+    }
+
+    /**
+     * Only rewrites the macro cells that changed availability since the last move.
+     * Won and tied cells are never touched.
+     */
+    private void setActiveBoards(String[][] macroBoard, int nextActive)
+    {
+        int changed = activeBoards ^ nextActive;
+        while(changed != 0) {
+            int i = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            if((nextActive & (1 << i)) != 0)
+                macroBoard[i / 3][i % 3] = IField.AVAILABLE_FIELD;
+            else if(macroBoard[i / 3][i % 3].equals(IField.AVAILABLE_FIELD))
+                macroBoard[i / 3][i % 3] = IField.EMPTY_FIELD;
         }
+        activeBoards = nextActive;
+    }
 
-        //check anti diagonal
-        if (localX + localY == 3 - 1) {
-            int less = 0;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][(startY + 2)-less++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
+    /**
+     * @return 0 or 1 for a micro board won by that player, TIED or UNDECIDED
+     */
+    private int getMicroboardStatus(int macroX, int macroY)
+    {
+        IField field = currentState.getField();
+        if(field instanceof BitField) {
+            BitField bitField = (BitField) field;
+            int bit = 1 << (macroX * 3 + macroY);
+            if((bitField.getWonMask(0) & bit) != 0) return 0;
+            if((bitField.getWonMask(1) & bit) != 0) return 1;
+            if((bitField.getTiedMask() & bit) != 0) return TIED;
+            return UNDECIDED;
         }
-        return false;
+        String value = field.getMacroboard()[macroX][macroY];
+        if(value.equals("0")) return 0;
+        if(value.equals("1")) return 1;
+        if(value.equals(IField.TIE_FIELD)) return TIED;
+        return UNDECIDED;
     }
-    
-    private void updateMacroboard(IMove move)
+
+    /**
+     * The Zobrist key changes of a move, applying it twice takes the move back.
+     */
+    private static long zobristDelta(IMove move, int player, int status, int activeBefore, int activeAfter)
     {
-        String[][] macroBoard = currentState.getField().getMacroboard();
+        long delta = Zobrist.cell(player, move.getX(), move.getY())
+                ^ Zobrist.active(activeBefore) ^ Zobrist.active(activeAfter)
+                ^ Zobrist.side();
+        if(status != UNDECIDED)
+            delta ^= Zobrist.microboard(status, (move.getX() / 3) * 3 + move.getY() / 3);
+        return delta;
+    }
+
+    /**
+     * Reads which micro boards are open for the next move from the field.
+     * @return 9-bit mask with bit (x/3)*3 + y/3 set for every available micro board
+     */
+    private int readActiveBoards()
+    {
+        IField field = currentState.getField();
+        if(field instanceof BitField)
+            return ((BitField) field).getActiveMask();
+        String[][] macroBoard = field.getMacroboard();
+        int active = 0;
         for (int i = 0; i < macroBoard.length; i++)
             for (int k = 0; k < macroBoard[i].length; k++) {
                 if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                    macroBoard[i][k] = IField.EMPTY_FIELD;
+                    active |= 1 << (i * 3 + k);
             }
-
-        int xTrans = move.getX()%3;
-        int yTrans = move.getY()%3;
-
-        if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-        else {
-            // Field is already won, set all fields not won to avail.
-            for (int i = 0; i < macroBoard.length; i++)
-                for (int k = 0; k < macroBoard[i].length; k++) {
-                    if(macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
-                }
-        }
+        return active;
     }
 }
@@ -0,0 +1,107 @@
+package dk.easv.bll.game;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * A Random backed by a SplittableRandom, handed to bots through
+ * IGameState.getRandom(). It can be used anywhere a Random is expected, e.g.
+ * for Simulator.playout, but it is not thread safe: it skips the atomic seed
+ * update of Random, which makes it faster when one thread draws many numbers.
+ *
+ * Every game of a seeded match gets its own seed from the master seed, and
+ * every bot in the game its own stream split off from that, so a run can be
+ * repeated exactly, whatever order the games are played in.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final ThreadLocal<GameRandom> THREAD_STREAMS = ThreadLocal.withInitial(GameRandom::new);
+
+    private SplittableRandom stream;
+
+    /**
+     * Creates a stream with a seed that differs every time.
+     */
+    public GameRandom() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * @param seed the seed, the same seed gives the same numbers
+     */
+    public GameRandom(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private GameRandom(SplittableRandom stream) {
+        super(0);
+        this.stream = stream;
+    }
+
+    /**
+     * @return a new stream, independent of this one, that this stream will not produce
+     */
+    public GameRandom split() {
+        return new GameRandom(stream.split());
+    }
+
+    /**
+     * @return the unseeded stream of the calling thread, made on first use
+     */
+    static GameRandom ofThread() {
+        return THREAD_STREAMS.get();
+    }
+
+    /**
+     * Seed of one game of a run, the same as the index + 1st long a
+     * SplittableRandom seeded with the master seed returns, without drawing the ones before it.
+     * @param masterSeed seed of the run
+     * @param index number of the game in the run
+     * @return the seed of the game
+     */
+    public static long seedOf(long masterSeed, long index) {
+        long z = masterSeed + (index + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Random's constructor calls this before the stream exists
+        if (stream != null)
+            stream = new SplittableRandom(seed);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return stream.nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        return stream.nextInt();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return stream.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return stream.nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        return stream.nextDouble();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return stream.nextBoolean();
+    }
+}
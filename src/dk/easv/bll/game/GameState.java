@@ -1,27 +1,56 @@
 package dk.easv.bll.game;
 
+import dk.easv.bll.field.BitField;
 import dk.easv.bll.field.Field;
+import dk.easv.bll.field.FieldSnapshot;
 import dk.easv.bll.field.IField;
 
+import java.util.Random;
+
 public class GameState implements IGameState{
     IField field;
     int moveNumber;
     int roundNumber;
     int timePerMove = 1000; //1000ms default value, can be changes depending on game specifics.
+    long zobristKey;
+    transient Random random; // Not part of the JSON the teacher bot sends
 
     public GameState(){
         field = new Field();
         moveNumber=0;
         roundNumber=0;
+        zobristKey = Zobrist.keyOf(this);
+    }
+
+    /**
+     * Creates an empty game on the given field, e.g. a BitField for fast simulations.
+     * @param field an empty field
+     */
+    public GameState(IField field){
+        this.field = field;
+        moveNumber=0;
+        roundNumber=0;
+        zobristKey = Zobrist.keyOf(this);
     }
 
     public GameState(IGameState state) {
-        field = new Field();
-        field.setMacroboard(state.getField().getMacroboard());
-        field.setBoard(state.getField().getBoard());
+        if (state.getField() instanceof BitField) {
+            field = new BitField((BitField) state.getField());
+        }
+        else if (state.getField() instanceof FieldSnapshot) {
+            field = new BitField((FieldSnapshot) state.getField());
+        }
+        else {
+            field = new Field();
+            field.setMacroboard(state.getField().getMacroboard());
+            field.setBoard(state.getField().getBoard());
+        }
 
         moveNumber = state.getMoveNumber();
         roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
+        zobristKey = state.getZobristKey();
+        random = state.getRandom();
     }
 
     @Override
@@ -60,4 +89,29 @@ public class GameState implements IGameState{
     {
         this.timePerMove = milliSeconds;
     }
+
+    @Override
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    @Override
+    public void setZobristKey(long zobristKey) {
+        this.zobristKey = zobristKey;
+    }
+
+    /**
+     * @return the random stream set for the game, or an unseeded one made on first use
+     */
+    @Override
+    public Random getRandom() {
+        if (random == null)
+            random = new GameRandom();
+        return random;
+    }
+
+    @Override
+    public void setRandom(Random random) {
+        this.random = random;
+    }
 }
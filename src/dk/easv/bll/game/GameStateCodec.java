@@ -0,0 +1,152 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.field.FieldSnapshot;
+import dk.easv.bll.field.IBitboard;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary encoding of game states and moves, for network bots,
+ * game logs and position caches.
+ *
+ * A state takes STATE_BYTES bytes:
+ * <pre>
+ *  1 byte   version
+ * 11 bytes  cells of player 0, micro board m at bits m*9 (8 + 3 bytes)
+ * 11 bytes  cells of player 1, same layout
+ *  4 bytes  macroboard, 2 bits status per micro board (0 undecided, 1 won by
+ *           player 0, 2 won by player 1, 3 tied) followed by the 9-bit active mask
+ *  1 byte   move number
+ *  1 byte   round number
+ * </pre>
+ * A move takes one byte holding the cell index x*9 + y.
+ * The time per move is not part of the encoding and the Zobrist key is
+ * computed again when decoding.
+ */
+public final class GameStateCodec {
+
+    public static final byte VERSION = 1;
+    public static final int STATE_BYTES = 29;
+    public static final int MOVE_BYTES = 1;
+
+    private static final int STATUS_WON_0 = 1;
+    private static final int STATUS_WON_1 = 2;
+    private static final int STATUS_TIED = 3;
+
+    private GameStateCodec() {
+    }
+
+    /**
+     * Writes the state at the current position of the buffer.
+     * @param state the state to encode
+     * @param buffer buffer with at least STATE_BYTES remaining
+     */
+    public static void encode(IGameState state, ByteBuffer buffer) {
+        IField field = state.getField();
+        IBitboard bitboard = field instanceof IBitboard
+                ? (IBitboard) field
+                : FieldSnapshot.of(field);
+
+        buffer.put(VERSION);
+        for (int player = 0; player < 2; player++) {
+            long low = 0;
+            for (int micro = 0; micro < 7; micro++) {
+                low |= (long) bitboard.getCells(player, micro) << (micro * 9);
+            }
+            int high = bitboard.getCells(player, 7) | bitboard.getCells(player, 8) << 9;
+            buffer.putLong(low);
+            buffer.put((byte) high);
+            buffer.put((byte) (high >>> 8));
+            buffer.put((byte) (high >>> 16));
+        }
+
+        int macro = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            int status = 0;
+            if ((bitboard.getWonMask(0) & bit) != 0)
+                status = STATUS_WON_0;
+            else if ((bitboard.getWonMask(1) & bit) != 0)
+                status = STATUS_WON_1;
+            else if ((bitboard.getTiedMask() & bit) != 0)
+                status = STATUS_TIED;
+            macro |= status << (micro * 2);
+        }
+        macro |= bitboard.getActiveMask() << 18;
+        buffer.putInt(macro);
+        buffer.put((byte) state.getMoveNumber());
+        buffer.put((byte) state.getRoundNumber());
+    }
+
+    /**
+     * Reads a state from the current position of the buffer.
+     * @param buffer buffer with at least STATE_BYTES remaining
+     * @return a new GameState on a BitField
+     * @throws IllegalArgumentException if the encoding has an unknown version
+     */
+    public static GameState decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unknown game state encoding version " + version);
+
+        BitField field = new BitField();
+        for (int player = 0; player < 2; player++) {
+            long low = buffer.getLong();
+            int high = (buffer.get() & 0xFF)
+                    | (buffer.get() & 0xFF) << 8
+                    | (buffer.get() & 0xFF) << 16;
+            for (int micro = 0; micro < 7; micro++) {
+                field.setCells(player, micro, (int) (low >>> (micro * 9)) & BitField.FULL_MASK);
+            }
+            field.setCells(player, 7, high & BitField.FULL_MASK);
+            field.setCells(player, 8, (high >>> 9) & BitField.FULL_MASK);
+        }
+
+        int macro = buffer.getInt();
+        for (int micro = 0; micro < 9; micro++) {
+            int status = (macro >>> (micro * 2)) & 3;
+            if (status == STATUS_WON_0)
+                field.setWon(micro, 0);
+            else if (status == STATUS_WON_1)
+                field.setWon(micro, 1);
+            else if (status == STATUS_TIED)
+                field.setTied(micro);
+        }
+        field.setActiveMask((macro >>> 18) & BitField.FULL_MASK);
+
+        GameState state = new GameState(field);
+        state.setMoveNumber(buffer.get() & 0xFF);
+        state.setRoundNumber(buffer.get() & 0xFF);
+        state.setZobristKey(Zobrist.keyOf(state));
+        return state;
+    }
+
+    /**
+     * @param move the move to encode
+     * @return the cell index x*9 + y as a byte
+     */
+    public static byte toByte(IMove move) {
+        return (byte) (move.getX() * 9 + move.getY());
+    }
+
+    /**
+     * @param encoded a move encoded by toByte
+     * @return the move
+     */
+    public static IMove fromByte(byte encoded) {
+        int cell = encoded & 0xFF;
+        return new Move(cell / 9, cell % 9);
+    }
+
+    public static void encodeMove(IMove move, ByteBuffer buffer) {
+        buffer.put(toByte(move));
+    }
+
+    public static IMove decodeMove(ByteBuffer buffer) {
+        return fromByte(buffer.get());
+    }
+}
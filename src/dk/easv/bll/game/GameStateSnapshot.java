@@ -0,0 +1,105 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.FieldSnapshot;
+import dk.easv.bll.field.IField;
+
+import java.util.Random;
+
+/**
+ * Read-only copy of a game state, handed to bots each turn instead of a full
+ * GameState copy. The field is a FieldSnapshot packed into a few longs.
+ * Setters throw UnsupportedOperationException, use new GameState(snapshot)
+ * to get a state that can be played on.
+ */
+public final class GameStateSnapshot implements IGameState {
+
+    private final FieldSnapshot field;
+    private final int moveNumber;
+    private final int roundNumber;
+    private final int timePerMove;
+    private final long zobristKey;
+    private final Random random;
+
+    private GameStateSnapshot(IGameState state, Random random) {
+        field = FieldSnapshot.of(state.getField());
+        moveNumber = state.getMoveNumber();
+        roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
+        zobristKey = state.getZobristKey();
+        this.random = random;
+    }
+
+    /**
+     * @param state the live state
+     * @return read-only snapshot of the state
+     */
+    public static GameStateSnapshot of(IGameState state) {
+        if (state instanceof GameStateSnapshot)
+            return (GameStateSnapshot) state;
+        return new GameStateSnapshot(state, state.getRandom());
+    }
+
+    /**
+     * @param state the live state
+     * @param random the random stream of the bot the snapshot is for
+     * @return read-only snapshot of the state
+     */
+    public static GameStateSnapshot of(IGameState state, Random random) {
+        return new GameStateSnapshot(state, random);
+    }
+
+    @Override
+    public IField getField() {
+        return field;
+    }
+
+    @Override
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    @Override
+    public void setMoveNumber(int moveNumber) {
+        throw new UnsupportedOperationException("The game state snapshot is read-only");
+    }
+
+    @Override
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    @Override
+    public void setRoundNumber(int roundNumber) {
+        throw new UnsupportedOperationException("The game state snapshot is read-only");
+    }
+
+    @Override
+    public int getTimePerMove() {
+        return timePerMove;
+    }
+
+    @Override
+    public void setTimePerMove(int milliSeconds) {
+        throw new UnsupportedOperationException("The game state snapshot is read-only");
+    }
+
+    @Override
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    @Override
+    public void setZobristKey(long zobristKey) {
+        throw new UnsupportedOperationException("The game state snapshot is read-only");
+    }
+
+    @Override
+    public Random getRandom() {
+        return random;
+    }
+
+    @Override
+    public void setRandom(Random random) {
+        throw new UnsupportedOperationException("The game state snapshot is read-only");
+    }
+}
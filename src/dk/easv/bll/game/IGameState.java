@@ -2,6 +2,8 @@ package dk.easv.bll.game;
 
 import dk.easv.bll.field.IField;
 
+import java.util.Random;
+
 /**
  *
  * @author mjl
@@ -18,4 +20,33 @@ public interface IGameState {
 
     int getTimePerMove();
     void setTimePerMove(int milliSeconds);
+
+    /**
+     * 64-bit Zobrist key of the position, covering the cells, the macroboard,
+     * the active micro boards and the side to move. Kept up to date by the GameManager.
+     * The default computes the key from scratch with Zobrist.keyOf and
+     * ignores setZobristKey; states that store the key override both.
+     * @return the Zobrist key
+     */
+    default long getZobristKey() {
+        return Zobrist.keyOf(this);
+    }
+
+    default void setZobristKey(long zobristKey) {
+    }
+
+    /**
+     * Source of randomness for the bot to move. In a seeded run it is the
+     * bot's own stream for the game, so bots that use it instead of a new
+     * Random play the same way every time the run is repeated.
+     * The default hands out an unseeded stream of the calling thread, made
+     * on first use, and ignores setRandom; states that keep a stream override both.
+     * @return the random stream, not thread safe
+     */
+    default Random getRandom() {
+        return GameRandom.ofThread();
+    }
+
+    default void setRandom(Random random) {
+    }
 }
@@ -0,0 +1,173 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IBitboard;
+import dk.easv.bll.field.IField;
+
+/**
+ * Precomputed lookup tables for the tic-tac-toe rules of a single 3x3 board.
+ * A 3x3 board is described by a 9-bit mask where bit (x%3)*3 + y%3 is set
+ * for each cell the player holds. The same tables are used for the micro
+ * boards and for the macroboard.
+ */
+public final class RulesTable {
+
+    public static final int FULL_MASK = 0x1FF;
+
+    /**
+     * The eight lines of a 3x3 board: three columns, three rows and both diagonals.
+     */
+    public static final int[] LINES = {
+            0x007, 0x038, 0x1C0,
+            0x049, 0x092, 0x124,
+            0x111, 0x054};
+
+    // For every 9-bit mask, the cells that are part of a completed line
+    private static final short[] LINE_CELLS = new short[512];
+    // For every 9-bit occupancy mask, whether all cells are taken
+    private static final boolean[] FULL = new boolean[512];
+    // For every 9-bit mask of blocked cells, whether a line is left that avoids them all
+    private static final boolean[] OPEN_LINE = new boolean[512];
+
+    static {
+        for (int mask = 0; mask < 512; mask++) {
+            int cells = 0;
+            for (int line : LINES) {
+                if ((mask & line) == line)
+                    cells |= line;
+            }
+            LINE_CELLS[mask] = (short) cells;
+            FULL[mask] = mask == FULL_MASK;
+            for (int line : LINES) {
+                if ((mask & line) == 0)
+                    OPEN_LINE[mask] = true;
+            }
+        }
+    }
+
+    private RulesTable() {
+    }
+
+    /**
+     * @param mask 9-bit mask of the cells a player holds
+     * @return true if the mask contains three in a row
+     */
+    public static boolean isLine(int mask) {
+        return LINE_CELLS[mask] != 0;
+    }
+
+    /**
+     * @param mask 9-bit mask of the cells a player holds
+     * @param cell cell index (x%3)*3 + y%3
+     * @return true if the mask contains three in a row going through the cell
+     */
+    public static boolean isLineThrough(int mask, int cell) {
+        return (LINE_CELLS[mask] & (1 << cell)) != 0;
+    }
+
+    /**
+     * @param occupied 9-bit mask of the cells taken by either player
+     * @return true if no cell is left on the board
+     */
+    public static boolean isFull(int occupied) {
+        return FULL[occupied];
+    }
+
+    /**
+     * @param blocked 9-bit mask of the cells a player can no longer get
+     * @return true if the player can still complete a line
+     */
+    public static boolean hasOpenLine(int blocked) {
+        return OPEN_LINE[blocked];
+    }
+
+    /**
+     * Checks whether neither player can complete a macro line any more, so
+     * the game can only end in a tie. A micro board is lost to a player when
+     * the opponent won it, it is tied, or every line in it holds an opponent cell.
+     * @param board the field
+     * @return true if no player can win the game
+     */
+    public static boolean isDeadDraw(IBitboard board) {
+        int won0 = board.getWonMask(0);
+        int won1 = board.getWonMask(1);
+        int tied = board.getTiedMask();
+        int blocked0 = won1 | tied;
+        int blocked1 = won0 | tied;
+        int open = FULL_MASK & ~(won0 | won1 | tied);
+        while (open != 0) {
+            int micro = Integer.numberOfTrailingZeros(open);
+            open &= open - 1;
+            if (!OPEN_LINE[board.getCells(1, micro)])
+                blocked0 |= 1 << micro;
+            if (!OPEN_LINE[board.getCells(0, micro)])
+                blocked1 |= 1 << micro;
+        }
+        return !OPEN_LINE[blocked0] && !OPEN_LINE[blocked1];
+    }
+
+    /**
+     * Same check as isDeadDraw(IBitboard), for a field kept in another form,
+     * e.g. the string boards of a Field, without building a bitboard first.
+     * @param won0 micro boards won by player 0
+     * @param won1 micro boards won by player 1
+     * @param tied micro boards that are tied
+     * @param cells the cells of each player per micro board, cells[player][micro],
+     *              only the micro boards that are not decided are read
+     * @return true if no player can win the game
+     */
+    public static boolean isDeadDraw(int won0, int won1, int tied, int[][] cells) {
+        int blocked0 = won1 | tied;
+        int blocked1 = won0 | tied;
+        int open = FULL_MASK & ~(won0 | won1 | tied);
+        while (open != 0) {
+            int micro = Integer.numberOfTrailingZeros(open);
+            open &= open - 1;
+            if (!OPEN_LINE[cells[1][micro]])
+                blocked0 |= 1 << micro;
+            if (!OPEN_LINE[cells[0][micro]])
+                blocked1 |= 1 << micro;
+        }
+        return !OPEN_LINE[blocked0] && !OPEN_LINE[blocked1];
+    }
+
+    /**
+     * Builds the 9-bit mask of the 3x3 area containing (x,y) where the board holds the given id.
+     * @param board the 9x9 board or the 3x3 macroboard
+     * @param x Column of any cell in the area
+     * @param y Row of any cell in the area
+     * @param id the player id to look for
+     * @return 9-bit mask
+     */
+    public static int maskOf(String[][] board, int x, int y, String id) {
+        int startX = x - x % 3;
+        int startY = y - y % 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (board[startX + i][startY + k].equals(id))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    /**
+     * Builds the 9-bit mask of the taken cells in the 3x3 area containing (x,y).
+     * A cell is taken when it is neither EMPTY_FIELD nor AVAILABLE_FIELD.
+     * @param board the 9x9 board or the 3x3 macroboard
+     * @param x Column of any cell in the area
+     * @param y Row of any cell in the area
+     * @return 9-bit mask
+     */
+    public static int occupiedMaskOf(String[][] board, int x, int y) {
+        int startX = x - x % 3;
+        int startY = y - y % 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                String value = board[startX + i][startY + k];
+                if (!value.equals(IField.EMPTY_FIELD) && !value.equals(IField.AVAILABLE_FIELD))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+}
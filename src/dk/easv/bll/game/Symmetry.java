@@ -0,0 +1,319 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.field.FieldSnapshot;
+import dk.easv.bll.field.IBitboard;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * The eight symmetries of the board: four rotations and four reflections.
+ * Rotating or reflecting the 9x9 board turns the macroboard and every micro
+ * board the same way, so a position and its seven images play identically.
+ *
+ * The canonical orientation of a position is the symmetry that gives the
+ * smallest Zobrist key. Opening books, caches and search trees can store the
+ * canonical position only, and map moves back with fromCanonical.
+ *
+ * Symmetries are numbered 0-7, 0 is the identity.
+ * <pre>
+ * 0 identity       4 mirror x
+ * 1 rotate 90      5 mirror y
+ * 2 rotate 180     6 transpose
+ * 3 rotate 270     7 anti-transpose
+ * </pre>
+ */
+public final class Symmetry {
+
+    public static final int COUNT = 8;
+    public static final int IDENTITY = 0;
+
+    // For every symmetry, where each cell x*9 + y ends up
+    private static final int[][] CELLS = new int[COUNT][81];
+    // For every symmetry, where each 3x3 index ends up, for micro boards and cells alike
+    private static final int[][] INDEXES = new int[COUNT][9];
+    // For every symmetry, the image of each 9-bit mask
+    private static final short[][] MASKS = new short[COUNT][512];
+    private static final int[] INVERSE = new int[COUNT];
+
+    static {
+        for (int s = 0; s < COUNT; s++) {
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++) {
+                    CELLS[s][x * 9 + y] = map(s, x, y, 8);
+                }
+            for (int i = 0; i < 9; i++) {
+                int image = map(s, i / 3, i % 3, 2);
+                INDEXES[s][i] = (image / 9) * 3 + image % 9;
+            }
+            for (int mask = 0; mask < 512; mask++) {
+                int image = 0;
+                for (int i = 0; i < 9; i++) {
+                    if ((mask & (1 << i)) != 0)
+                        image |= 1 << INDEXES[s][i];
+                }
+                MASKS[s][mask] = (short) image;
+            }
+        }
+        for (int s = 0; s < COUNT; s++)
+            for (int t = 0; t < COUNT; t++) {
+                if (CELLS[t][CELLS[s][1]] == 1 && CELLS[t][CELLS[s][9]] == 9)
+                    INVERSE[s] = t;
+            }
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * @return the image of (x,y) on an (n+1)x(n+1) board as x*9 + y
+     */
+    private static int map(int symmetry, int x, int y, int n) {
+        switch (symmetry) {
+            case 1: return y * 9 + (n - x);
+            case 2: return (n - x) * 9 + (n - y);
+            case 3: return (n - y) * 9 + x;
+            case 4: return (n - x) * 9 + y;
+            case 5: return x * 9 + (n - y);
+            case 6: return y * 9 + x;
+            case 7: return (n - y) * 9 + (n - x);
+            default: return x * 9 + y;
+        }
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @return the symmetry that takes the image back to the original
+     */
+    public static int inverse(int symmetry) {
+        return INVERSE[symmetry];
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @param cell cell index x*9 + y
+     * @return the cell index of the image
+     */
+    public static int cell(int symmetry, int cell) {
+        return CELLS[symmetry][cell];
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @param mask 9-bit mask of micro boards, or of cells in a micro board
+     * @return the mask of the image
+     */
+    public static int mask(int symmetry, int mask) {
+        return MASKS[symmetry][mask];
+    }
+
+    /**
+     * @param move a move in the original orientation
+     * @param symmetry 0-7
+     * @return the move in the orientation given by the symmetry
+     */
+    public static IMove transform(IMove move, int symmetry) {
+        int cell = CELLS[symmetry][move.getX() * 9 + move.getY()];
+        return new Move(cell / 9, cell % 9);
+    }
+
+    /**
+     * @param move a move in the original orientation
+     * @param symmetry the canonical symmetry of the position
+     * @return the move in the canonical orientation
+     */
+    public static IMove toCanonical(IMove move, int symmetry) {
+        return transform(move, symmetry);
+    }
+
+    /**
+     * @param move a move in the canonical orientation, e.g. from an opening book
+     * @param symmetry the canonical symmetry of the position
+     * @return the move in the original orientation
+     */
+    public static IMove fromCanonical(IMove move, int symmetry) {
+        return transform(move, INVERSE[symmetry]);
+    }
+
+    /**
+     * Computes the Zobrist key the position would have in another orientation,
+     * without building the transformed position.
+     * @param state the state
+     * @param symmetry 0-7
+     * @return 64-bit Zobrist key of the image
+     */
+    public static long keyOf(IGameState state, int symmetry) {
+        return keyOf(bitboardOf(state), state.getMoveNumber(), symmetry);
+    }
+
+    /**
+     * @param state the state
+     * @return the symmetry that gives the position its smallest Zobrist key
+     */
+    public static int canonicalSymmetry(IGameState state) {
+        IBitboard bitboard = bitboardOf(state);
+        int best = IDENTITY;
+        long bestKey = keyOf(bitboard, state.getMoveNumber(), IDENTITY);
+        for (int s = 1; s < COUNT; s++) {
+            long key = keyOf(bitboard, state.getMoveNumber(), s);
+            if (key < bestKey) {
+                bestKey = key;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The same for all eight orientations of a position, use it as the key of
+     * opening books and caches.
+     * @param state the state
+     * @return the Zobrist key of the canonical orientation
+     */
+    public static long canonicalKey(IGameState state) {
+        IBitboard bitboard = bitboardOf(state);
+        long bestKey = keyOf(bitboard, state.getMoveNumber(), IDENTITY);
+        for (int s = 1; s < COUNT; s++) {
+            bestKey = Math.min(bestKey, keyOf(bitboard, state.getMoveNumber(), s));
+        }
+        return bestKey;
+    }
+
+    /**
+     * Builds the position in another orientation.
+     * @param state the state
+     * @param symmetry 0-7
+     * @return a new GameState on a BitField
+     */
+    public static GameState transform(IGameState state, int symmetry) {
+        IBitboard bitboard = bitboardOf(state);
+        BitField field = new BitField();
+        for (int micro = 0; micro < 9; micro++) {
+            int image = INDEXES[symmetry][micro];
+            field.setCells(0, image, MASKS[symmetry][bitboard.getCells(0, micro)]);
+            field.setCells(1, image, MASKS[symmetry][bitboard.getCells(1, micro)]);
+        }
+        int won0 = MASKS[symmetry][bitboard.getWonMask(0)];
+        int won1 = MASKS[symmetry][bitboard.getWonMask(1)];
+        int tied = MASKS[symmetry][bitboard.getTiedMask()];
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            if ((won0 & bit) != 0)
+                field.setWon(micro, 0);
+            else if ((won1 & bit) != 0)
+                field.setWon(micro, 1);
+            else if ((tied & bit) != 0)
+                field.setTied(micro);
+        }
+        field.setActiveMask(MASKS[symmetry][bitboard.getActiveMask()]);
+
+        GameState image = new GameState(field);
+        image.setMoveNumber(state.getMoveNumber());
+        image.setRoundNumber(state.getRoundNumber());
+        image.setTimePerMove(state.getTimePerMove());
+        image.setZobristKey(Zobrist.keyOf(image));
+        return image;
+    }
+
+    /**
+     * @param state the state
+     * @return the position in its canonical orientation
+     */
+    public static GameState canonicalize(IGameState state) {
+        return transform(state, canonicalSymmetry(state));
+    }
+
+    /**
+     * @param state the state
+     * @return 8-bit mask with bit s set for every symmetry that maps the position onto itself
+     */
+    public static int stabilizer(IGameState state) {
+        IBitboard bitboard = bitboardOf(state);
+        int stabilizer = 1 << IDENTITY;
+        for (int s = 1; s < COUNT; s++) {
+            if (isInvariant(bitboard, s))
+                stabilizer |= 1 << s;
+        }
+        return stabilizer;
+    }
+
+    /**
+     * Writes the available moves into the buffer, leaving out moves that a
+     * symmetry of the position maps onto a move already written. On the empty
+     * board this leaves 15 of the 81 moves.
+     * @param state the state
+     * @param buffer Buffer with room for at least 81 moves
+     * @return Number of moves written to the buffer, each as the cell index x*9 + y
+     */
+    public static int distinctMoves(IGameState state, int[] buffer) {
+        int count = state.getField().getAvailableMoves(buffer);
+        int stabilizer = stabilizer(state);
+        if (stabilizer == 1 << IDENTITY)
+            return count;
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = buffer[i];
+            boolean smallest = true;
+            for (int s = 1; s < COUNT && smallest; s++) {
+                if ((stabilizer & (1 << s)) != 0 && CELLS[s][cell] < cell)
+                    smallest = false;
+            }
+            if (smallest)
+                buffer[distinct++] = cell;
+        }
+        return distinct;
+    }
+
+    private static boolean isInvariant(IBitboard bitboard, int symmetry) {
+        for (int micro = 0; micro < 9; micro++) {
+            int image = INDEXES[symmetry][micro];
+            if (bitboard.getCells(0, image) != MASKS[symmetry][bitboard.getCells(0, micro)]
+                    || bitboard.getCells(1, image) != MASKS[symmetry][bitboard.getCells(1, micro)])
+                return false;
+        }
+        return bitboard.getWonMask(0) == MASKS[symmetry][bitboard.getWonMask(0)]
+                && bitboard.getWonMask(1) == MASKS[symmetry][bitboard.getWonMask(1)]
+                && bitboard.getTiedMask() == MASKS[symmetry][bitboard.getTiedMask()]
+                && bitboard.getActiveMask() == MASKS[symmetry][bitboard.getActiveMask()];
+    }
+
+    private static long keyOf(IBitboard bitboard, int moveNumber, int symmetry) {
+        int[] cells = CELLS[symmetry];
+        long key = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int base = (micro / 3) * 27 + (micro % 3) * 3;
+            for (int player = 0; player < 2; player++) {
+                int mask = bitboard.getCells(player, micro);
+                while (mask != 0) {
+                    int bit = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int image = cells[base + (bit / 3) * 9 + bit % 3];
+                    key ^= Zobrist.cell(player, image / 9, image % 9);
+                }
+            }
+        }
+        int[] indexes = INDEXES[symmetry];
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            if ((bitboard.getWonMask(0) & bit) != 0)
+                key ^= Zobrist.microboard(0, indexes[micro]);
+            else if ((bitboard.getWonMask(1) & bit) != 0)
+                key ^= Zobrist.microboard(1, indexes[micro]);
+            else if ((bitboard.getTiedMask() & bit) != 0)
+                key ^= Zobrist.microboard(2, indexes[micro]);
+        }
+        key ^= Zobrist.active(MASKS[symmetry][bitboard.getActiveMask()]);
+        if (moveNumber % 2 == 1)
+            key ^= Zobrist.side();
+        return key;
+    }
+
+    private static IBitboard bitboardOf(IGameState state) {
+        IField field = state.getField();
+        return field instanceof IBitboard
+                ? (IBitboard) field
+                : FieldSnapshot.of(field);
+    }
+}
@@ -0,0 +1,116 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for Ultimate Tic-Tac-Toe positions.
+ * A key is the XOR of one random number per occupied cell, per won or tied
+ * micro board, one for the set of active micro boards and one when player 1
+ * is to move. The numbers come from a fixed seed, so keys are the same on
+ * every run and can be stored in position databases.
+ *
+ * The GameManager keeps IGameState.getZobristKey() up to date after each move,
+ * keyOf computes the key of any state from scratch.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x5EED_0F_777L;
+
+    private static final long[][] CELLS = new long[2][81];
+    private static final long[][] WON = new long[2][9];
+    private static final long[] TIED = new long[9];
+    private static final long[] ACTIVE = new long[512];
+    private static final long SIDE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < 81; i++) {
+            CELLS[0][i] = random.nextLong();
+            CELLS[1][i] = random.nextLong();
+        }
+        for (int i = 0; i < 9; i++) {
+            WON[0][i] = random.nextLong();
+            WON[1][i] = random.nextLong();
+            TIED[i] = random.nextLong();
+        }
+        for (int i = 0; i < 512; i++) {
+            ACTIVE[i] = random.nextLong();
+        }
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param x Column
+     * @param y Row
+     * @return the key of the player holding the cell
+     */
+    public static long cell(int player, int x, int y) {
+        return CELLS[player][x * 9 + y];
+    }
+
+    /**
+     * @param status 0 or 1 for a micro board won by that player, 2 for a tied one
+     * @param micro micro board index, (x/3)*3 + y/3
+     * @return the key of the micro board status
+     */
+    public static long microboard(int status, int micro) {
+        return status == 2 ? TIED[micro] : WON[status][micro];
+    }
+
+    /**
+     * @param activeMask 9-bit mask of the micro boards open for the next move
+     * @return the key of the active board constraint
+     */
+    public static long active(int activeMask) {
+        return ACTIVE[activeMask];
+    }
+
+    /**
+     * @return the key toggled on every move, as the side to move changes
+     */
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Computes the key of a state from scratch. The side to move is taken
+     * from the move number.
+     * @param state the state
+     * @return 64-bit Zobrist key
+     */
+    public static long keyOf(IGameState state) {
+        IField field = state.getField();
+        long key = 0;
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                String id = field.getPlayerId(x, y);
+                if (id.equals("0"))
+                    key ^= CELLS[0][x * 9 + y];
+                else if (id.equals("1"))
+                    key ^= CELLS[1][x * 9 + y];
+            }
+        String[][] macroBoard = field.getMacroboard();
+        int active = 0;
+        for (int i = 0; i < 9; i++) {
+            String value = macroBoard[i / 3][i % 3];
+            if (value.equals("0"))
+                key ^= WON[0][i];
+            else if (value.equals("1"))
+                key ^= WON[1][i];
+            else if (value.equals(IField.TIE_FIELD))
+                key ^= TIED[i];
+            else if (value.equals(IField.AVAILABLE_FIELD))
+                active |= 1 << i;
+        }
+        key ^= ACTIVE[active];
+        if (state.getMoveNumber() % 2 == 1)
+            key ^= SIDE;
+        return key;
+    }
+}
@@ -18,6 +18,16 @@ public class GameResult {
     private String player1;
 
     private Winner winner;
+
+    private int moveCount;
+
+    private byte[] moves;
+
+    private long overrunMillis;
+
+    private long seed;
+
+    private long gameNumber;
     
     private LocalDateTime date = LocalDateTime.now();
 
@@ -41,6 +51,63 @@ public class GameResult {
         this.winner = winner;
     }
 
+    public GameResult(String player0, String player1, Winner winner, int moveCount) {
+        this(player0, player1, winner);
+        this.moveCount = moveCount;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public void setMoveCount(int moveCount) {
+        this.moveCount = moveCount;
+    }
+
+    /**
+     * @return the moves of the game, each as the cell index x*9 + y, or null if they were not recorded
+     */
+    public byte[] getMoves() {
+        return moves;
+    }
+
+    public void setMoves(byte[] moves) {
+        this.moves = moves;
+    }
+
+    /**
+     * @return how many milliseconds the loser went over its time per move, 0 if the game was not lost on time
+     */
+    public long getOverrunMillis() {
+        return overrunMillis;
+    }
+
+    public void setOverrunMillis(long overrunMillis) {
+        this.overrunMillis = overrunMillis;
+    }
+
+    /**
+     * @return the seed the random streams of the bots were split off from, see GamePlayer
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return number of the game in its match or league, counting from 0
+     */
+    public long getGameNumber() {
+        return gameNumber;
+    }
+
+    public void setGameNumber(long gameNumber) {
+        this.gameNumber = gameNumber;
+    }
+
     public Winner getWinner() {
         return winner;
     }
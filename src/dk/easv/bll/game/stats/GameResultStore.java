@@ -0,0 +1,158 @@
+package dk.easv.bll.game.stats;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store for many game results.
+ * Instead of one GameResult object per game the results are kept in
+ * primitive columns: the player ids, the winner, the move count and the
+ * time as epoch nanoseconds, about 14 bytes per game. Bot names are stored
+ * once and referred to by id. The columns grow in pages, so adding a game
+ * never copies the results stored before it.
+ *
+ * Totals per pairing of player 0 and player 1 are kept up to date as games
+ * are added. get(index) builds a GameResult on demand, e.g. for the rows a
+ * list view shows.
+ */
+public class GameResultStore {
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final GameResult.Winner[] WINNERS = GameResult.Winner.values();
+
+    private final Map<String, Integer> botIds = new HashMap<>();
+    private final List<String> botNames = new ArrayList<>();
+    // Totals per pairing, key player0 id << 16 | player1 id, indexed by Winner ordinal
+    private final Map<Integer, long[]> pairings = new HashMap<>();
+
+    private short[][] player0 = new short[0][];
+    private short[][] player1 = new short[0][];
+    private byte[][] winner = new byte[0][];
+    private byte[][] moveCount = new byte[0][];
+    private long[][] time = new long[0][];
+    private int size = 0;
+
+    /**
+     * Adds a result to the end of the store.
+     * @param result the result to add
+     * @return the index of the result
+     */
+    public synchronized int add(GameResult result) {
+        Instant instant = result.getDate().atZone(ZoneId.systemDefault()).toInstant();
+        return add(result.getPlayer0(), result.getPlayer1(), result.getWinner(), result.getMoveCount(),
+                instant.getEpochSecond() * 1_000_000_000L + instant.getNano());
+    }
+
+    /**
+     * Adds a result to the end of the store.
+     * @param player0Name name of the bot or player that moved first
+     * @param player1Name name of the bot or player that moved second
+     * @param gameWinner the winner
+     * @param moves number of moves played
+     * @param epochNanos time the game ended, in nanoseconds since the epoch
+     * @return the index of the result
+     */
+    public synchronized int add(String player0Name, String player1Name, GameResult.Winner gameWinner, int moves, long epochNanos) {
+        int page = size >>> PAGE_BITS;
+        if (page == player0.length)
+            addPage();
+        int offset = size & PAGE_MASK;
+        int id0 = botId(player0Name);
+        int id1 = botId(player1Name);
+        player0[page][offset] = (short) id0;
+        player1[page][offset] = (short) id1;
+        winner[page][offset] = (byte) gameWinner.ordinal();
+        moveCount[page][offset] = (byte) moves;
+        time[page][offset] = epochNanos;
+        pairings.computeIfAbsent(id0 << 16 | id1, key -> new long[WINNERS.length])[gameWinner.ordinal()]++;
+        return size++;
+    }
+
+    /**
+     * Builds the result stored at the index.
+     * @param index index of the result, from 0 to size() - 1
+     * @return a new GameResult
+     */
+    public synchronized GameResult get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        int page = index >>> PAGE_BITS;
+        int offset = index & PAGE_MASK;
+        GameResult result = new GameResult(
+                botNames.get(player0[page][offset] & 0xFFFF),
+                botNames.get(player1[page][offset] & 0xFFFF),
+                WINNERS[winner[page][offset]],
+                moveCount[page][offset]);
+        long nanos = time[page][offset];
+        result.setDate(LocalDateTime.ofInstant(
+                Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)),
+                ZoneId.systemDefault()));
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes all results. The bot ids are kept.
+     */
+    public synchronized void clear() {
+        player0 = new short[0][];
+        player1 = new short[0][];
+        winner = new byte[0][];
+        moveCount = new byte[0][];
+        time = new long[0][];
+        pairings.clear();
+        size = 0;
+    }
+
+    /**
+     * @param player0Name name of the bot or player that moved first
+     * @param player1Name name of the bot or player that moved second
+     * @param gameWinner the outcome to count
+     * @return number of games between the two with that outcome
+     */
+    public synchronized long getCount(String player0Name, String player1Name, GameResult.Winner gameWinner) {
+        Integer id0 = botIds.get(player0Name);
+        Integer id1 = botIds.get(player1Name);
+        if (id0 == null || id1 == null)
+            return 0;
+        long[] totals = pairings.get(id0 << 16 | id1);
+        return totals == null ? 0 : totals[gameWinner.ordinal()];
+    }
+
+    private int botId(String name) {
+        Integer id = botIds.get(name);
+        if (id == null) {
+            if (botNames.size() > 0xFFFF)
+                throw new IllegalStateException("Too many different bot names in one store");
+            id = botNames.size();
+            botIds.put(name, id);
+            botNames.add(name);
+        }
+        return id;
+    }
+
+    private void addPage() {
+        int pages = player0.length + 1;
+        player0 = Arrays.copyOf(player0, pages);
+        player1 = Arrays.copyOf(player1, pages);
+        winner = Arrays.copyOf(winner, pages);
+        moveCount = Arrays.copyOf(moveCount, pages);
+        time = Arrays.copyOf(time, pages);
+        player0[pages - 1] = new short[PAGE_SIZE];
+        player1[pages - 1] = new short[PAGE_SIZE];
+        winner[pages - 1] = new byte[PAGE_SIZE];
+        moveCount[pages - 1] = new byte[PAGE_SIZE];
+        time[pages - 1] = new long[PAGE_SIZE];
+    }
+}
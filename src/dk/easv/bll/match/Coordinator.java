@@ -0,0 +1,414 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.GameRandom;
+import dk.easv.bll.game.stats.GameResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Plays a match on Worker processes instead of in this JVM, so a match can
+ * use the cores of many machines, and a bot that brings down its JVM only
+ * takes one worker with it.
+ *
+ * The coordinator listens on a port, workers connect to it whenever they
+ * like, and each connected worker is handed batches of games, one batch at a
+ * time. The results come back game by game. When a worker disconnects or is
+ * silent for too long, the games of its batch that have no result yet are
+ * handed to the next worker that asks, before any new games.
+ *
+ * The games are numbered and played as by one MatchRunner, so the results
+ * are the same as for a local match with the same seed. Without a seed the
+ * coordinator picks one, a game played again for a lost worker is then
+ * still the same game.
+ */
+public class Coordinator implements Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final Class<? extends IBot> bot1Class;
+    private final Class<? extends IBot> bot2Class;
+    private final long games;
+    private final ServerSocket server;
+    private final BlockingDeque<long[]> batches = new LinkedBlockingDeque<>();
+    private final LongAdder winsBot1 = new LongAdder();
+    private final LongAdder winsBot2 = new LongAdder();
+    private final LongAdder ties = new LongAdder();
+    private final LongAdder played = new LongAdder();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final List<Thread> connections = new ArrayList<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Consumer<GameResult> resultHandler = null;
+    private volatile int timePerMove = GamePlayer.TIME_PER_MOVE;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile OpeningSuite openings = null;
+    private volatile boolean seeded = false;
+    private volatile long seed;
+    private volatile boolean cancelled = false;
+    private volatile String[] botNames = null;
+    private boolean started = false;
+
+    /**
+     * Opens the port, workers can connect once the match is started.
+     * @param bot1 class of the first bot, the workers must have it on their class path
+     * @param bot2 class of the second bot, the workers must have it on their class path
+     * @param games number of games to play
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException if the port can not be opened
+     */
+    public Coordinator(Class<? extends IBot> bot1, Class<? extends IBot> bot2, long games, int port) throws IOException {
+        if (games < 0)
+            throw new IllegalArgumentException("Number of games must not be negative, was " + games);
+        this.bot1Class = bot1;
+        this.bot2Class = bot2;
+        this.games = games;
+        this.server = new ServerSocket(port);
+    }
+
+    /**
+     * @param resultHandler called from the connection threads for every finished game
+     */
+    public void setResultHandler(Consumer<GameResult> resultHandler) {
+        this.resultHandler = resultHandler;
+    }
+
+    /**
+     * @param milliSeconds the time per move the workers give the bots
+     */
+    public void setTimePerMove(int milliSeconds) {
+        this.timePerMove = milliSeconds;
+    }
+
+    /**
+     * @param games number of games handed to a worker at a time
+     */
+    public void setBatchSize(int games) {
+        if (games < 1)
+            throw new IllegalArgumentException("Batch size must be positive, was " + games);
+        this.batchSize = games;
+    }
+
+    /**
+     * @param openings the openings to play from, each twice with the colours swapped, or null to start from the empty board
+     */
+    public void setOpeningSuite(OpeningSuite openings) {
+        this.openings = openings;
+    }
+
+    /**
+     * @param seed master seed of the run, each game gets its own seed from it
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.seeded = true;
+    }
+
+    /**
+     * Starts taking workers and returns at once.
+     */
+    public synchronized void start() {
+        if (started)
+            throw new IllegalStateException("The match has already been started");
+        started = true;
+        if (!seeded)
+            setSeed(ThreadLocalRandom.current().nextLong());
+        for (long first = 0; first < games; first += batchSize)
+            batches.add(new long[]{first, Math.min(batchSize, games - first)});
+        if (games == 0)
+            finished.countDown();
+
+        Thread acceptor = new Thread(this::acceptWorkers, "coordinator-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Waits for the match to end, after all games are played or it was cancelled.
+     */
+    public void await() {
+        synchronized (this) {
+            if (!started)
+                throw new IllegalStateException("The match has not been started");
+        }
+        try {
+            finished.await();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the match. No new batches are handed out and results still coming in are ignored.
+     */
+    public void cancel() {
+        cancelled = true;
+        finished.countDown();
+    }
+
+    /**
+     * Stops taking new workers, cancels the match if it is still going on, and
+     * waits until the connected workers are told they are done, which they are
+     * after their current batch.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!isDone())
+            cancel();
+        server.close();
+        List<Thread> threads;
+        synchronized (connections) {
+            threads = new ArrayList<>(connections);
+        }
+        try {
+            for (Thread connection : threads)
+                connection.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * @return the port workers connect to
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return number of workers connected and ready to play
+     */
+    public int getWorkers() {
+        return workers.get();
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getGamesPlayed() {
+        return played.sum();
+    }
+
+    /**
+     * @return share of the games played so far, from 0 to 1
+     */
+    public double getProgress() {
+        return games == 0 ? 1 : (double) played.sum() / games;
+    }
+
+    public long getWinsBot1() {
+        return winsBot1.sum();
+    }
+
+    public long getWinsBot2() {
+        return winsBot2.sum();
+    }
+
+    public long getTies() {
+        return ties.sum();
+    }
+
+    private void acceptWorkers() {
+        int number = 0;
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            }
+            catch (IOException ex) {
+                // Closed, or a connection that failed before it was accepted
+                continue;
+            }
+            Thread connection = new Thread(() -> serve(socket), "coordinator-worker-" + ++number);
+            connection.setDaemon(true);
+            synchronized (connections) {
+                connections.removeIf(thread -> !thread.isAlive());
+                connections.add(connection);
+            }
+            connection.start();
+        }
+    }
+
+    /**
+     * Hands batches to one worker until the match is over or the worker is lost.
+     */
+    private void serve(Socket socket) {
+        String worker = String.valueOf(socket.getRemoteSocketAddress());
+        boolean ready = false;
+        long[] batch = null;
+        BitSet done = new BitSet();
+        try (Socket connection = socket) {
+            connection.setSoTimeout(Protocol.TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            if (in.readInt() != Protocol.MAGIC || in.readInt() != Protocol.VERSION)
+                throw new IOException("Not a worker, or one of another version");
+            writeConfig(out);
+            out.flush();
+            byte reply = readMessage(in);
+            if (reply == Protocol.ERROR)
+                throw new IOException("The worker could not start: " + in.readUTF());
+            Protocol.expect(Protocol.READY, reply);
+            String[] names = {in.readUTF(), in.readUTF()};
+            synchronized (this) {
+                if (botNames == null)
+                    botNames = names;
+            }
+            ready = true;
+            workers.incrementAndGet();
+
+            while ((batch = nextBatch()) != null) {
+                done.clear();
+                out.writeByte(Protocol.BATCH);
+                out.writeLong(batch[0]);
+                out.writeInt((int) batch[1]);
+                out.flush();
+                for (int remaining = (int) batch[1]; remaining > 0; remaining--)
+                    readResult(in, batch, done);
+                batch = null;
+            }
+            out.writeByte(Protocol.DONE);
+            out.flush();
+        }
+        catch (IOException ex) {
+            if (batch != null)
+                requeue(batch, done);
+            if (!(ex instanceof SocketException && server.isClosed()))
+                System.err.println("Lost worker " + worker + ": "
+                        + (ex instanceof EOFException ? "disconnected" : ex.getMessage()));
+        }
+        finally {
+            if (ready)
+                workers.decrementAndGet();
+        }
+    }
+
+    private void writeConfig(DataOutputStream out) throws IOException {
+        out.writeByte(Protocol.CONFIG);
+        out.writeUTF(bot1Class.getName());
+        out.writeUTF(bot2Class.getName());
+        out.writeInt(timePerMove);
+        out.writeLong(seed);
+        OpeningSuite suite = openings;
+        out.writeInt(suite == null ? 0 : suite.size());
+        for (int i = 0; suite != null && i < suite.size(); i++) {
+            byte[] opening = suite.getOpening(i);
+            out.writeByte(opening.length);
+            out.write(opening);
+        }
+    }
+
+    /**
+     * @return the next batch, games lost with a worker first, or null once the match is over
+     */
+    private long[] nextBatch() {
+        while (!cancelled && finished.getCount() > 0) {
+            try {
+                long[] batch = batches.poll(1, TimeUnit.SECONDS);
+                if (batch != null)
+                    return batch;
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the games of the batch without a result back in front of the queue.
+     */
+    private void requeue(long[] batch, BitSet done) {
+        int count = (int) batch[1];
+        int from = done.nextClearBit(0);
+        while (from < count) {
+            int to = done.nextSetBit(from);
+            if (to < 0)
+                to = count;
+            batches.addFirst(new long[]{batch[0] + from, to - from});
+            from = done.nextClearBit(to);
+        }
+    }
+
+    private static byte readMessage(DataInputStream in) throws IOException {
+        byte type;
+        do {
+            type = in.readByte();
+        } while (type == Protocol.HEARTBEAT);
+        return type;
+    }
+
+    private void readResult(DataInputStream in, long[] batch, BitSet done) throws IOException {
+        Protocol.expect(Protocol.RESULT, readMessage(in));
+        long game = in.readLong();
+        int winner = in.readByte();
+        int moveCount = in.readByte();
+        if (game < batch[0] || game >= batch[0] + batch[1] || done.get((int) (game - batch[0])))
+            throw new IOException("Unexpected result for game " + game);
+        if (winner < 0 || winner >= GameResult.Winner.values().length || moveCount < 0 || moveCount > 81)
+            throw new IOException("Malformed result for game " + game);
+        byte[] moves = new byte[moveCount];
+        in.readFully(moves);
+        long overrunMillis = in.readLong();
+        done.set((int) (game - batch[0]));
+        gameFinished(game, GameResult.Winner.values()[winner], moves, overrunMillis);
+    }
+
+    private void gameFinished(long game, GameResult.Winner winner, byte[] moves, long overrunMillis) {
+        if (cancelled)
+            return;
+        boolean swapped = game % 2 == 1;
+        String[] names = botNames;
+        GameResult result = new GameResult(names[swapped ? 1 : 0], names[swapped ? 0 : 1], winner, moves.length);
+        result.setMoves(moves);
+        result.setOverrunMillis(overrunMillis);
+        result.setSeed(GameRandom.seedOf(seed, game));
+        result.setGameNumber(game);
+
+        if (winner == GameResult.Winner.tie)
+            ties.increment();
+        else if ((winner == GameResult.Winner.player0) != swapped)
+            winsBot1.increment();
+        else
+            winsBot2.increment();
+        played.increment();
+
+        Consumer<GameResult> handler = resultHandler;
+        if (handler != null)
+            handler.accept(result);
+        if (played.sum() == games)
+            finished.countDown();
+    }
+}
@@ -0,0 +1,258 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.IRemoteBot;
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.game.BotWatchdog;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameRandom;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.GameStateCodec;
+import dk.easv.bll.game.GameStateSnapshot;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.move.IMove;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays bot vs bot games to the end, without any GUI.
+ * A bot that returns an illegal move, no move at all, throws an exception or
+ * an error such as a StackOverflowError, or goes over its time per move
+ * loses the game, like BoardModel.forceGameOver does in the GUI.
+ * A bot also loses when it is to move while it still runs on a move it ran
+ * out of time with, see BotWatchdog. It is not asked for a move then, so one
+ * bot never thinks on two threads at once.
+ *
+ * Every thread keeps one state, field, GameManager and watchdog and resets
+ * them for each game it plays, so a worker thread can play any number of
+ * games without building a new board for each.
+ */
+public final class GamePlayer {
+
+    public static final int TIME_PER_MOVE = 1000; //Each bot is allowed 1000ms per move by default
+
+    private static final int PERMIT_POLL_MILLIS = 10;
+    private static final Map<Semaphore, PermitUse> PERMIT_USES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final ThreadLocal<Table> TABLES = ThreadLocal.withInitial(Table::new);
+
+    private GamePlayer() {
+    }
+
+    /**
+     * @param player0 the bot that moves first
+     * @param player1 the bot that moves second
+     * @return the result of the game
+     */
+    public static GameResult play(IBot player0, IBot player1) {
+        return play(player0, player1, TIME_PER_MOVE);
+    }
+
+    /**
+     * @param player0 the bot that moves first
+     * @param player1 the bot that moves second
+     * @param timePerMove the time per move in milliseconds, as told to the bots
+     * @return the result of the game
+     */
+    public static GameResult play(IBot player0, IBot player1, int timePerMove) {
+        return play(player0, player1, timePerMove, null);
+    }
+
+    /**
+     * @param player0 the bot that moves first
+     * @param player1 the bot that moves second
+     * @param timePerMove the time per move in milliseconds
+     * @param localPermits permits shared by all games, a bot that is not an IRemoteBot takes one
+     *                     before its time starts and holds it until its doMove returns, or null for no limit
+     * @return the result of the game
+     */
+    public static GameResult play(IBot player0, IBot player1, int timePerMove, Semaphore localPermits) {
+        return play(player0, player1, timePerMove, localPermits, new byte[0]);
+    }
+
+    /**
+     * @param player0 the bot playing the side that made the first move of the opening
+     * @param player1 the bot playing the other side
+     * @param timePerMove the time per move in milliseconds
+     * @param localPermits permits shared by all games, a bot that is not an IRemoteBot takes one
+     *                     before its time starts and holds it until its doMove returns, or null for no limit
+     * @param opening moves played before the bots take over, each as the cell index x*9 + y
+     * @return the result of the game, the moves include the opening
+     */
+    public static GameResult play(IBot player0, IBot player1, int timePerMove, Semaphore localPermits, byte[] opening) {
+        return play(player0, player1, timePerMove, localPermits, opening, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Plays a game that can be repeated: each bot gets its own GameRandom
+     * stream through the game state, split off from the seed of the game.
+     * @param player0 the bot playing the side that made the first move of the opening
+     * @param player1 the bot playing the other side
+     * @param timePerMove the time per move in milliseconds
+     * @param localPermits permits shared by all games, a bot that is not an IRemoteBot takes one
+     *                     before its time starts and holds it until its doMove returns, or null for no limit
+     * @param opening moves played before the bots take over, each as the cell index x*9 + y
+     * @param seed seed of the game
+     * @return the result of the game, the moves include the opening
+     */
+    public static GameResult play(IBot player0, IBot player1, int timePerMove, Semaphore localPermits, byte[] opening,
+                                  long seed) {
+        Table table = TABLES.get();
+        if (table.inUse)
+            table = new Table(); // A bot that plays games of its own while it thinks
+        table.inUse = true;
+        try {
+            GameState state = table.state;
+            GameManager game = table.game;
+            game.reset(player0, player1);
+            state.setTimePerMove(timePerMove);
+            table.watchdog.reset();
+            byte[] moves = table.moves;
+            for (byte cell : opening) {
+                if (!game.updateGame(GameStateCodec.fromByte(cell)))
+                    throw new IllegalArgumentException("Illegal move " + GameStateCodec.fromByte(cell) + " in the opening");
+                moves[state.getMoveNumber() - 1] = cell;
+            }
+            GameRandom random = new GameRandom(seed);
+            table.randoms[0] = random.split();
+            table.randoms[1] = random.split();
+            table.bots[0] = player0;
+            table.bots[1] = player1;
+            GameResult.Winner winner = playToEnd(game, state, table.watchdog, localPermits, table.bots, table.randoms, moves);
+            GameResult result = new GameResult(player0.getBotName(), player1.getBotName(), winner, state.getMoveNumber());
+            result.setMoves(Arrays.copyOf(moves, state.getMoveNumber()));
+            result.setOverrunMillis(table.watchdog.getOverrunMillis());
+            result.setSeed(seed);
+            return result;
+        }
+        finally {
+            // The bots and streams are not kept alive by the thread after the game
+            Arrays.fill(table.bots, null);
+            Arrays.fill(table.randoms, null);
+            table.inUse = false;
+        }
+    }
+
+    /**
+     * Asks the bots for their moves in turn, like GameManager.updateGame() does,
+     * and records every move played.
+     */
+    private static GameResult.Winner playToEnd(GameManager game, GameState state, BotWatchdog watchdog,
+                                               Semaphore localPermits, IBot[] bots, Random[] randoms, byte[] moves) {
+        while (game.getGameOver() == GameManager.GameOverState.Active) {
+            int player = game.getCurrentPlayer();
+            if (BotWatchdog.hasMoveLeftBehind(bots[player])) // It still thinks on a move it ran out of time with
+                return player == 0 ? GameResult.Winner.player1 : GameResult.Winner.player0;
+            boolean valid;
+            try {
+                IGameState snapshot = GameStateSnapshot.of(state, randoms[player]);
+                IMove move = askBot(watchdog, localPermits, bots[player], snapshot);
+                valid = move != null && game.updateGame(move);
+                if (valid)
+                    moves[state.getMoveNumber() - 1] = GameStateCodec.toByte(move);
+            }
+            catch (StackOverflowError ex) {
+                valid = false;
+            }
+            catch (VirtualMachineError ex) {
+                throw ex; // Out of memory or a broken JVM, the other games can not go on either
+            }
+            catch (Throwable ex) {
+                valid = false; // Exceptions, LinkageErrors and other errors of the bot lose the game
+            }
+            if (!valid)
+                return game.getCurrentPlayer() == 0 ? GameResult.Winner.player1 : GameResult.Winner.player0;
+        }
+        if (game.getGameOver() == GameManager.GameOverState.Tie)
+            return GameResult.Winner.tie;
+        // The player who made the last move won
+        return game.getCurrentPlayer() == 1 ? GameResult.Winner.player0 : GameResult.Winner.player1;
+    }
+
+    /**
+     * The objects one thread plays its games with.
+     */
+    private static final class Table {
+        final GameState state = new GameState(new BitField());
+        final GameManager game = new GameManager(state);
+        final BotWatchdog watchdog = new BotWatchdog();
+        final byte[] moves = new byte[81];
+        final IBot[] bots = new IBot[2];
+        final Random[] randoms = new Random[2];
+        boolean inUse = false;
+    }
+
+    private static IMove askBot(BotWatchdog watchdog, Semaphore localPermits, IBot bot, IGameState state) {
+        if (localPermits == null || bot instanceof IRemoteBot)
+            return watchdog.doMove(bot, state);
+        PermitUse use = PERMIT_USES.computeIfAbsent(localPermits, permits -> new PermitUse());
+        try {
+            while (!localPermits.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Moves left behind keep their permits until the bots return, that may be never
+                if (use.leftBehind.get() > 0 && use.leftBehind.get() >= use.taken.get())
+                    return watchdog.doMove(bot, state);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to move", ex);
+        }
+        use.taken.incrementAndGet();
+        HeldPermit permit = new HeldPermit(localPermits, use);
+        try {
+            return watchdog.doMove(bot, state, permit);
+        }
+        finally {
+            if (watchdog.isOverrun())
+                permit.leaveBehind();
+        }
+    }
+
+    /**
+     * How many permits of a set are taken, and how many of those by moves that ran out of time.
+     */
+    private static final class PermitUse {
+        final AtomicInteger taken = new AtomicInteger();
+        final AtomicInteger leftBehind = new AtomicInteger();
+    }
+
+    /**
+     * A permit taken for one move, the bot thread gives it back when the bot returns.
+     */
+    private static final class HeldPermit implements Runnable {
+        private final Semaphore permits;
+        private final PermitUse use;
+        private boolean released = false;
+        private boolean leftBehind = false;
+
+        HeldPermit(Semaphore permits, PermitUse use) {
+            this.permits = permits;
+            this.use = use;
+        }
+
+        synchronized void leaveBehind() {
+            if (released || leftBehind)
+                return;
+            leftBehind = true;
+            use.leftBehind.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void run() {
+            released = true;
+            if (leftBehind)
+                use.leftBehind.decrementAndGet();
+            use.taken.decrementAndGet();
+            permits.release();
+        }
+    }
+}
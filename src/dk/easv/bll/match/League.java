@@ -0,0 +1,283 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.BotWatchdog;
+import dk.easv.bll.game.GameRandom;
+import dk.easv.bll.game.stats.GameResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Round-robin league between any number of bots.
+ * Every bot plays every other bot with both colour orders, the same number
+ * of games per pairing. All games of the league go on one work-stealing pool,
+ * and the Elo ratings are updated as each game finishes.
+ *
+ * Like the MatchRunner, each worker thread gets its own instance of every bot,
+ * and startConcurrent plays many games at once for leagues with remote bots.
+ * With a seed the games are seeded as in the MatchRunner.
+ */
+public class League {
+
+    public static final double INITIAL_RATING = 1500;
+    private static final double K_FACTOR = 16;
+
+    private final List<Class<? extends IBot>> botClasses;
+    private final long games;
+    private final ThreadLocal<IBot[]> bots;
+    private final ThreadLocal<boolean[]> overran;
+    private final String[] names;
+    private final double[] ratings;
+    private final long[] wins;
+    private final long[] losses;
+    private final long[] ties;
+    private final LongAdder played = new LongAdder();
+    private volatile boolean cancelled = false;
+    private volatile int timePerMove = GamePlayer.TIME_PER_MOVE;
+    private volatile Semaphore localPermits = null;
+    private volatile boolean seeded = false;
+    private volatile long seed;
+    private ForkJoinTask<?> task;
+
+    /**
+     * @param botClasses the bots taking part, each needs a public no-argument constructor
+     * @param gamesPerPairing number of games for each pair of bots and colour order
+     */
+    public League(List<Class<? extends IBot>> botClasses, long gamesPerPairing) {
+        if (botClasses.size() < 2)
+            throw new IllegalArgumentException("A league needs at least two bots");
+        if (gamesPerPairing < 0)
+            throw new IllegalArgumentException("Number of games must not be negative, was " + gamesPerPairing);
+        this.botClasses = new ArrayList<>(botClasses);
+        int n = botClasses.size();
+        this.games = (long) n * (n - 1) * gamesPerPairing;
+        this.bots = ThreadLocal.withInitial(() -> new IBot[n]);
+        this.overran = ThreadLocal.withInitial(() -> new boolean[n]);
+        names = new String[n];
+        ratings = new double[n];
+        wins = new long[n];
+        losses = new long[n];
+        ties = new long[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = MatchRunner.newBot(botClasses.get(i)).getBotName();
+            ratings[i] = INITIAL_RATING;
+        }
+    }
+
+    /**
+     * @param milliSeconds the time per move told to the bots
+     */
+    public void setTimePerMove(int milliSeconds) {
+        this.timePerMove = milliSeconds;
+    }
+
+    /**
+     * @param seed master seed of the league, each game gets its own seed from it
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.seeded = true;
+    }
+
+    /**
+     * Starts the league on the shared pool and returns at once.
+     */
+    public synchronized void start() {
+        start(MatchRunner.POOL);
+    }
+
+    /**
+     * Starts the league on the given pool and returns at once.
+     * @param pool the pool to play the games on
+     */
+    public synchronized void start(ForkJoinPool pool) {
+        if (task != null)
+            throw new IllegalStateException("The league has already been started");
+        task = pool.submit(new Games(0, games));
+    }
+
+    /**
+     * Starts the league with up to the given number of games going on at once
+     * and returns at once. Local bots still only think on as many threads at a
+     * time as there are cores, see MatchRunner.startConcurrent.
+     * @param concurrentGames the most games going on at the same time
+     */
+    public synchronized void startConcurrent(int concurrentGames) {
+        if (task != null)
+            throw new IllegalStateException("The league has already been started");
+        ForkJoinPool pool = MatchRunner.newConcurrentPool(concurrentGames);
+        localPermits = new Semaphore(MatchRunner.CORES);
+        start(pool);
+        pool.shutdown();
+    }
+
+    /**
+     * Waits for the league to end, after all games are played or it was cancelled.
+     */
+    public void await() {
+        ForkJoinTask<?> started;
+        synchronized (this) {
+            started = task;
+        }
+        if (started == null)
+            throw new IllegalStateException("The league has not been started");
+        started.join();
+    }
+
+    /**
+     * Stops the league. Games already being played are finished, no new games are started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getGamesPlayed() {
+        return played.sum();
+    }
+
+    /**
+     * @return the bots ordered by rating, best first, as they stand now
+     */
+    public synchronized List<Standing> getStandings() {
+        List<Standing> standings = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            standings.add(new Standing(names[i], ratings[i], wins[i], losses[i], ties[i]));
+        }
+        standings.sort(Comparator.comparingDouble(Standing::getRating).reversed());
+        return standings;
+    }
+
+    private void playGame(long game) {
+        int n = names.length;
+        // Consecutive games go to different pairings, so the ratings move together
+        long pairing = game % ((long) n * (n - 1));
+        int first = (int) (pairing / (n - 1));
+        int second = (int) (pairing % (n - 1));
+        if (second >= first)
+            second++;
+
+        long gameSeed = seeded ? GameRandom.seedOf(seed, game) : ThreadLocalRandom.current().nextLong();
+        GameResult result = GamePlayer.play(bot(first), bot(second), timePerMove, localPermits, new byte[0], gameSeed);
+        result.setGameNumber(game);
+        GameResult.Winner winner = result.getWinner();
+        if (result.getOverrunMillis() > 0) // The bot that ran out of time lost
+            overran.get()[winner == GameResult.Winner.player0 ? second : first] = true;
+        double score = winner == GameResult.Winner.player0 ? 1
+                : winner == GameResult.Winner.player1 ? 0
+                : 0.5;
+        synchronized (this) {
+            double expected = 1 / (1 + Math.pow(10, (ratings[second] - ratings[first]) / 400));
+            double change = K_FACTOR * (score - expected);
+            ratings[first] += change;
+            ratings[second] -= change;
+            if (winner == GameResult.Winner.player0) {
+                wins[first]++;
+                losses[second]++;
+            }
+            else if (winner == GameResult.Winner.player1) {
+                wins[second]++;
+                losses[first]++;
+            }
+            else {
+                ties[first]++;
+                ties[second]++;
+            }
+        }
+        played.increment();
+    }
+
+    private IBot bot(int index) {
+        IBot[] threadBots = bots.get();
+        boolean[] late = overran.get();
+        // A bot that ran out of time keeps its seat, and loses its games, until its move has returned
+        if (threadBots[index] == null || late[index] && !BotWatchdog.hasMoveLeftBehind(threadBots[index])) {
+            threadBots[index] = MatchRunner.newBot(botClasses.get(index));
+            late[index] = false;
+        }
+        return threadBots[index];
+    }
+
+    /**
+     * One row of the league table.
+     */
+    public static class Standing {
+        private final String botName;
+        private final double rating;
+        private final long wins;
+        private final long losses;
+        private final long ties;
+
+        public Standing(String botName, double rating, long wins, long losses, long ties) {
+            this.botName = botName;
+            this.rating = rating;
+            this.wins = wins;
+            this.losses = losses;
+            this.ties = ties;
+        }
+
+        public String getBotName() {
+            return botName;
+        }
+
+        public double getRating() {
+            return rating;
+        }
+
+        public long getWins() {
+            return wins;
+        }
+
+        public long getLosses() {
+            return losses;
+        }
+
+        public long getTies() {
+            return ties;
+        }
+
+        public long getGames() {
+            return wins + losses + ties;
+        }
+    }
+
+    /**
+     * Splits the range of games in halves until a single game is left,
+     * idle workers steal the halves that are not started yet.
+     */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Games(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled)
+                return;
+            if (to - from == 1) {
+                playGame(from);
+            }
+            else if (to - from > 1) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Games(from, middle), new Games(middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.game.stats.GameResult;
+
+/**
+ * Receives the results of a MatchRunner. The methods are called from the
+ * worker threads, hand the results over to the UI thread where needed.
+ */
+public interface MatchListener {
+
+    /**
+     * Called once for every game played.
+     * @param result the result of the game
+     */
+    void gameFinished(GameResult result);
+
+    /**
+     * Called once when all games are played or the match was cancelled.
+     * @param match the match, holding the totals
+     */
+    void matchFinished(MatchRunner match);
+}
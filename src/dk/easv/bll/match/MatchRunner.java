@@ -0,0 +1,379 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.BotWatchdog;
+import dk.easv.bll.game.GameRandom;
+import dk.easv.bll.game.stats.GameResult;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays a match of bot vs bot games on a work-stealing pool.
+ * Every game is its own task, so a slow game never leaves the other cores
+ * idle, and exactly the requested number of games is played. Odd numbered
+ * games are played with bot2 moving first.
+ *
+ * Each worker thread gets its own instance of both bots, bots never have to
+ * be thread safe. Results are counted per bot, whatever colour it played.
+ * A bot that runs out of time keeps its seat on the thread, and loses the
+ * games there, until its move has returned, then the thread makes a new one.
+ *
+ * Remote bots spend most of a move waiting for their server, for them
+ * startConcurrent plays many more games at once than there are cores.
+ * With an Sprt the match stops as soon as the test decides.
+ *
+ * With an OpeningSuite, games 2n and 2n + 1 start from the same opening with
+ * the colours swapped, and each such pair also counts as one sample with a
+ * score for bot1 of 0, 0.5, 1, 1.5 or 2 points.
+ *
+ * With a seed, game n is played with the seed GameRandom.seedOf(seed, n), so
+ * a run can be repeated exactly as long as the bots only draw from the random
+ * stream in the game state and do not depend on the clock.
+ */
+public class MatchRunner {
+
+    static final int CORES = Runtime.getRuntime().availableProcessors();
+    static final ForkJoinPool POOL = new ForkJoinPool(CORES);
+
+    private final Class<? extends IBot> bot1Class;
+    private final Class<? extends IBot> bot2Class;
+    private final long firstGame;
+    private final long games;
+    private final ThreadLocal<IBot[]> bots;
+    private final ThreadLocal<boolean[]> overran = ThreadLocal.withInitial(() -> new boolean[2]);
+    private final LongAdder winsBot1 = new LongAdder();
+    private final LongAdder winsBot2 = new LongAdder();
+    private final LongAdder ties = new LongAdder();
+    private final LongAdder played = new LongAdder();
+    // Pairs by points of bot1 in half points, and the half points of the first finished game of open pairs
+    private final LongAdder[] pairs = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+    private final ConcurrentMap<Long, Integer> openPairs = new ConcurrentHashMap<>();
+    private volatile boolean cancelled = false;
+    private volatile MatchListener listener = null;
+    private volatile int timePerMove = GamePlayer.TIME_PER_MOVE;
+    private volatile Semaphore localPermits = null;
+    private volatile Sprt sprt = null;
+    private volatile OpeningSuite openings = null;
+    private volatile boolean seeded = false;
+    private volatile long seed;
+    private volatile Sprt.Decision decision = Sprt.Decision.Undecided;
+    private ForkJoinTask<?> task;
+
+    /**
+     * @param bot1 class of the first bot, it needs a public no-argument constructor
+     * @param bot2 class of the second bot, it needs a public no-argument constructor
+     * @param games number of games to play
+     */
+    public MatchRunner(Class<? extends IBot> bot1, Class<? extends IBot> bot2, long games) {
+        this(bot1, bot2, 0, games);
+    }
+
+    /**
+     * Plays part of a larger match, the games keep their numbers in it, so
+     * they get the colours, opening and seed they would get there.
+     * @param firstGame number of the first game to play
+     * @param games number of games to play
+     */
+    MatchRunner(Class<? extends IBot> bot1, Class<? extends IBot> bot2, long firstGame, long games) {
+        if (games < 0 || firstGame < 0)
+            throw new IllegalArgumentException("Game numbers must not be negative, was " + firstGame + " and " + games);
+        this.bot1Class = bot1;
+        this.bot2Class = bot2;
+        this.firstGame = firstGame;
+        this.games = games;
+        this.bots = ThreadLocal.withInitial(() -> new IBot[]{newBot(bot1Class), newBot(bot2Class)});
+    }
+
+    /**
+     * @param listener called from the worker threads for every finished game and once when the match ends
+     */
+    public void setListener(MatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param milliSeconds the time per move told to the bots
+     */
+    public void setTimePerMove(int milliSeconds) {
+        this.timePerMove = milliSeconds;
+    }
+
+    /**
+     * @param sprt the test to run on the results, the match is cancelled once it decides, or null to play all games
+     */
+    public void setSprt(Sprt sprt) {
+        this.sprt = sprt;
+    }
+
+    /**
+     * @param openings the openings to play from, each twice with the colours swapped, or null to start from the empty board
+     */
+    public void setOpeningSuite(OpeningSuite openings) {
+        this.openings = openings;
+    }
+
+    /**
+     * @param seed master seed of the run, each game gets its own seed from it
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.seeded = true;
+    }
+
+    /**
+     * @return the decision of the Sprt, Undecided while it has not decided or if there is none
+     */
+    public Sprt.Decision getDecision() {
+        return decision;
+    }
+
+    /**
+     * @return the log-likelihood ratio of the Sprt for the results so far, 0 if there is none
+     */
+    public double getLlr() {
+        Sprt test = sprt;
+        if (test == null)
+            return 0;
+        return openings == null ? test.llr(winsBot1.sum(), winsBot2.sum(), ties.sum()) : test.llrPairs(getPairs());
+    }
+
+    /**
+     * @return number of finished pairs in which bot1 scored 0, 0.5, 1, 1.5 and 2 points, all 0 without an OpeningSuite
+     */
+    public long[] getPairs() {
+        long[] counts = new long[pairs.length];
+        for (int i = 0; i < pairs.length; i++)
+            counts[i] = pairs[i].sum();
+        return counts;
+    }
+
+    /**
+     * Starts the match on the shared pool and returns at once.
+     */
+    public synchronized void start() {
+        start(POOL);
+    }
+
+    /**
+     * Starts the match on the given pool and returns at once.
+     * @param pool the pool to play the games on
+     */
+    public synchronized void start(ForkJoinPool pool) {
+        if (task != null)
+            throw new IllegalStateException("The match has already been started");
+        task = pool.submit(new Games(firstGame, firstGame + games));
+    }
+
+    /**
+     * Starts the match with up to the given number of games going on at once
+     * and returns at once. Every game in progress has its own thread, so the
+     * waits of remote bots overlap, while local bots still only think on as
+     * many threads at a time as there are cores.
+     * @param concurrentGames the most games going on at the same time
+     */
+    public synchronized void startConcurrent(int concurrentGames) {
+        if (task != null)
+            throw new IllegalStateException("The match has already been started");
+        ForkJoinPool pool = newConcurrentPool(concurrentGames);
+        localPermits = new Semaphore(CORES);
+        start(pool);
+        // Lets the started games finish and the threads end after them
+        pool.shutdown();
+    }
+
+    /**
+     * Waits for the match to end, after all games are played or it was cancelled.
+     */
+    public void await() {
+        ForkJoinTask<?> started;
+        synchronized (this) {
+            started = task;
+        }
+        if (started == null)
+            throw new IllegalStateException("The match has not been started");
+        started.join();
+    }
+
+    /**
+     * Stops the match. Games already being played are finished, no new games are started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return task != null && task.isDone();
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getGamesPlayed() {
+        return played.sum();
+    }
+
+    /**
+     * @return share of the games played so far, from 0 to 1
+     */
+    public double getProgress() {
+        return games == 0 ? 1 : (double) played.sum() / games;
+    }
+
+    public long getWinsBot1() {
+        return winsBot1.sum();
+    }
+
+    public long getWinsBot2() {
+        return winsBot2.sum();
+    }
+
+    public long getTies() {
+        return ties.sum();
+    }
+
+    private void playGame(long game) {
+        IBot[] pair = bots.get();
+        boolean[] late = overran.get();
+        for (int i = 0; i < pair.length; i++) {
+            // A bot that ran out of time keeps its seat, and loses its games, until its move has returned
+            if (late[i] && !BotWatchdog.hasMoveLeftBehind(pair[i])) {
+                pair[i] = newBot(i == 0 ? bot1Class : bot2Class);
+                late[i] = false;
+            }
+        }
+        boolean swapped = game % 2 == 1;
+        IBot player0 = swapped ? pair[1] : pair[0];
+        IBot player1 = swapped ? pair[0] : pair[1];
+        OpeningSuite suite = openings;
+        byte[] opening = suite == null ? new byte[0] : suite.getOpening((int) ((game / 2) % suite.size()));
+        long gameSeed = seeded ? GameRandom.seedOf(seed, game) : ThreadLocalRandom.current().nextLong();
+        GameResult result = GamePlayer.play(player0, player1, timePerMove, localPermits, opening, gameSeed);
+        result.setGameNumber(game);
+        GameResult.Winner winner = result.getWinner();
+        if (result.getOverrunMillis() > 0) // The bot that ran out of time lost
+            late[(winner == GameResult.Winner.player0) != swapped ? 1 : 0] = true;
+
+        if (winner == GameResult.Winner.tie)
+            ties.increment();
+        else if ((winner == GameResult.Winner.player0) != swapped)
+            winsBot1.increment();
+        else
+            winsBot2.increment();
+        played.increment();
+
+        boolean pairFinished = false;
+        if (suite != null) {
+            int points = winner == GameResult.Winner.tie ? 1 : (winner == GameResult.Winner.player0) != swapped ? 2 : 0;
+            pairFinished = finishPairGame(game / 2, points);
+        }
+
+        Sprt test = sprt;
+        if (test != null && decision == Sprt.Decision.Undecided && (suite == null || pairFinished)) {
+            Sprt.Decision current = suite == null
+                    ? test.decide(winsBot1.sum(), winsBot2.sum(), ties.sum())
+                    : test.decidePairs(getPairs());
+            if (current != Sprt.Decision.Undecided)
+                decide(current);
+        }
+
+        MatchListener current = listener;
+        if (current != null)
+            current.gameFinished(result);
+    }
+
+    /**
+     * @param pair number of the pair the game belongs to
+     * @param points half points of bot1 in the game
+     * @return true if the other game of the pair had already finished, and the pair was counted
+     */
+    private boolean finishPairGame(long pair, int points) {
+        int[] total = {-1};
+        openPairs.compute(pair, (key, first) -> {
+            if (first == null)
+                return points;
+            total[0] = first + points;
+            return null;
+        });
+        if (total[0] < 0)
+            return false;
+        pairs[total[0]].increment();
+        return true;
+    }
+
+    private synchronized void decide(Sprt.Decision current) {
+        // The first decision stands, games still going on when it is made do not change it
+        if (decision == Sprt.Decision.Undecided) {
+            decision = current;
+            cancel();
+        }
+    }
+
+    static ForkJoinPool newConcurrentPool(int concurrentGames) {
+        if (concurrentGames < 1)
+            throw new IllegalArgumentException("Number of concurrent games must be positive, was " + concurrentGames);
+        return new ForkJoinPool(concurrentGames);
+    }
+
+    static IBot newBot(Class<? extends IBot> botClass) {
+        try {
+            return botClass.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create bot " + botClass.getName(), ex);
+        }
+    }
+
+    /**
+     * Splits the range of games in halves until a single game is left,
+     * idle workers steal the halves that are not started yet.
+     */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Games(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (!cancelled) {
+                    if (to - from == 1) {
+                        playGame(from);
+                    }
+                    else if (to - from > 1) {
+                        long middle = (from + to) >>> 1;
+                        invokeAll(new Games(from, middle), new Games(middle, to));
+                    }
+                }
+            }
+            finally {
+                // Also when a game failed, so a listener waiting for the end is never left waiting
+                if (from == firstGame && to == firstGame + games)
+                    matchFinished();
+            }
+        }
+    }
+
+    private void matchFinished() {
+        MatchListener current = listener;
+        if (current != null)
+            current.matchFinished(this);
+    }
+}
@@ -0,0 +1,167 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.game.GameStateCodec;
+import dk.easv.bll.game.Symmetry;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.sim.Simulator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A set of start positions for a match, each given by the moves that lead to it.
+ * The MatchRunner plays every opening twice with the colours swapped, so that
+ * neither bot gets the better side of an opening, and deterministic bots play
+ * different games instead of the same one over and over.
+ *
+ * A suite is generated from a seed, so the same seed gives the same suite, or
+ * loaded from a text file with one opening per line, the moves as x,y pairs
+ * separated by spaces. Lines starting with # are comments.
+ */
+public class OpeningSuite {
+
+    // Random playouts used to judge whether an opening is balanced
+    private static final int PLAYOUTS = 200;
+    private static final double MAX_IMBALANCE = 0.1;
+    private static final int MAX_TRIES_PER_OPENING = 1000;
+
+    private final List<byte[]> openings;
+
+    /**
+     * @param openings the openings, each as the moves that lead to it, every move as the cell index x*9 + y
+     */
+    public OpeningSuite(List<byte[]> openings) {
+        if (openings.isEmpty())
+            throw new IllegalArgumentException("An opening suite needs at least one opening");
+        this.openings = new ArrayList<>();
+        for (byte[] opening : openings) {
+            Simulator simulator = new Simulator();
+            for (byte cell : opening) {
+                if (!simulator.isLegal(cell))
+                    throw new IllegalArgumentException("Illegal move " + GameStateCodec.fromByte(cell)
+                            + " in opening " + (this.openings.size() + 1));
+                simulator.play(cell);
+            }
+            if (simulator.isGameOver())
+                throw new IllegalArgumentException("Opening " + (this.openings.size() + 1) + " ends the game");
+            this.openings.add(opening.clone());
+        }
+    }
+
+    /**
+     * Generates openings of random legal moves. Openings that are the same
+     * position as another one after turning or mirroring the board are left
+     * out, as are openings where random playouts clearly favour one player.
+     * @param count number of openings
+     * @param plies number of moves in every opening
+     * @param seed seed of the random moves
+     * @return the suite
+     * @throws IllegalArgumentException if there are not enough different balanced openings of that length
+     */
+    public static OpeningSuite generate(int count, int plies, long seed) {
+        if (count < 1 || plies < 0)
+            throw new IllegalArgumentException("Need a positive count and no negative plies, was " + count + " and " + plies);
+        Random random = new Random(seed);
+        Set<Long> positions = new HashSet<>();
+        List<byte[]> openings = new ArrayList<>();
+        Simulator simulator = new Simulator();
+        Simulator playout = new Simulator();
+        int tries = 0;
+        while (openings.size() < count) {
+            if (++tries > (long) count * MAX_TRIES_PER_OPENING)
+                throw new IllegalArgumentException("Could not find " + count + " different balanced openings of "
+                        + plies + " moves");
+            simulator.reset();
+            byte[] opening = new byte[plies];
+            for (int i = 0; i < plies && !simulator.isGameOver(); i++)
+                opening[i] = (byte) simulator.playRandom(random);
+            if (simulator.isGameOver() || !positions.add(Symmetry.canonicalKey(simulator.toGameState())))
+                continue;
+
+            double score = 0;
+            for (int i = 0; i < PLAYOUTS; i++) {
+                playout.copyFrom(simulator);
+                int result = playout.playout(random);
+                score += result == 0 ? 1 : result == Simulator.TIE ? 0.5 : 0;
+            }
+            if (Math.abs(score / PLAYOUTS - 0.5) <= MAX_IMBALANCE)
+                openings.add(opening);
+        }
+        return new OpeningSuite(openings);
+    }
+
+    /**
+     * @param file a file with one opening per line
+     * @return the suite
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if an opening is not legal
+     */
+    public static OpeningSuite load(Path file) throws IOException {
+        List<byte[]> openings = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] moves = line.split("\\s+");
+            byte[] opening = new byte[moves.length];
+            for (int i = 0; i < moves.length; i++) {
+                String[] xy = moves[i].split(",");
+                if (xy.length != 2)
+                    throw new IllegalArgumentException("Not a move: " + moves[i]);
+                int x;
+                int y;
+                try {
+                    x = Integer.parseInt(xy[0]);
+                    y = Integer.parseInt(xy[1]);
+                }
+                catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Not a move: " + moves[i]);
+                }
+                if (x < 0 || x >= 9 || y < 0 || y >= 9)
+                    throw new IllegalArgumentException("Not a move: " + moves[i]);
+                opening[i] = (byte) (x * 9 + y);
+            }
+            openings.add(opening);
+        }
+        return new OpeningSuite(openings);
+    }
+
+    /**
+     * Writes the suite in the format load reads.
+     * @param file the file to write
+     * @throws IOException if the file can not be written
+     */
+    public void save(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (byte[] opening : openings) {
+            StringBuilder line = new StringBuilder();
+            for (byte cell : opening) {
+                IMove move = GameStateCodec.fromByte(cell);
+                if (line.length() > 0)
+                    line.append(' ');
+                line.append(move.getX()).append(',').append(move.getY());
+            }
+            lines.add(line.toString());
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return openings.size();
+    }
+
+    /**
+     * @param index index of the opening, from 0 to size() - 1
+     * @return the moves of the opening, each as the cell index x*9 + y
+     */
+    public byte[] getOpening(int index) {
+        return openings.get(index).clone();
+    }
+}
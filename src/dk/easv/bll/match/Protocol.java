@@ -0,0 +1,49 @@
+package dk.easv.bll.match;
+
+import java.io.IOException;
+
+/**
+ * The messages between a Coordinator and its Workers, over a plain socket
+ * with DataOutputStream encoding.
+ * <pre>
+ * worker      HELLO   int magic, int version
+ * coordinator CONFIG  'C', utf bot1, utf bot2, int time per move, long seed,
+ *                     int opening count, per opening byte length and the moves
+ * worker      READY   'Y', utf name of bot1, utf name of bot2
+ *             or      'E', utf error message, and the worker disconnects
+ * coordinator BATCH   'B', long first game, int number of games
+ *             or DONE 'D', and the coordinator disconnects
+ * worker      RESULT  'R', long game, byte winner, byte move count, the moves,
+ *                     long overrun millis, once for every game of a batch
+ *             HEARTBEAT 'H', every few seconds while connected
+ * </pre>
+ * A batch is finished when the results of all its games have arrived, the
+ * coordinator then sends the next batch or DONE. Games are numbered as in
+ * one MatchRunner for the whole match, so the colours, opening and seed of a
+ * game follow from its number.
+ */
+final class Protocol {
+
+    static final int MAGIC = 0x55545454; // "UTTT"
+    static final int VERSION = 1;
+
+    static final byte CONFIG = 'C';
+    static final byte READY = 'Y';
+    static final byte ERROR = 'E';
+    static final byte BATCH = 'B';
+    static final byte DONE = 'D';
+    static final byte RESULT = 'R';
+    static final byte HEARTBEAT = 'H';
+
+    static final int HEARTBEAT_MILLIS = 5000;
+    // A worker that sends nothing for this long is taken for dead
+    static final int TIMEOUT_MILLIS = 6 * HEARTBEAT_MILLIS;
+
+    private Protocol() {
+    }
+
+    static void expect(byte type, byte read) throws IOException {
+        if (read != type)
+            throw new IOException("Expected message " + (char) type + ", got " + (char) read);
+    }
+}
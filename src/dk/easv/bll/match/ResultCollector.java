@@ -0,0 +1,49 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.game.stats.GameResult;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the results of a match so a UI can pick them up at its own pace.
+ * The worker threads only add to a lock-free queue, the UI thread drains it,
+ * e.g. a few times per second, and reads the totals from the MatchRunner.
+ */
+public class ResultCollector implements MatchListener {
+
+    private final ConcurrentLinkedQueue<GameResult> finished = new ConcurrentLinkedQueue<>();
+    private volatile boolean matchFinished = false;
+
+    @Override
+    public void gameFinished(GameResult result) {
+        finished.offer(result);
+    }
+
+    @Override
+    public void matchFinished(MatchRunner match) {
+        matchFinished = true;
+    }
+
+    /**
+     * Moves the results collected since the last call to the target.
+     * @param target the collection to add the results to
+     * @return number of results moved
+     */
+    public int drainTo(Collection<? super GameResult> target) {
+        int count = 0;
+        GameResult result;
+        while ((result = finished.poll()) != null) {
+            target.add(result);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return true once the match has ended, results may still be waiting to be drained
+     */
+    public boolean isMatchFinished() {
+        return matchFinished;
+    }
+}
@@ -0,0 +1,143 @@
+package dk.easv.bll.match;
+
+/**
+ * Sequential probability ratio test for a match between two bots.
+ * It tests whether bot1 is elo0 (H0) or elo1 (H1) Elo points stronger than
+ * bot2, and decides as soon as the results are clear enough for the given
+ * error rates, often long before all games are played.
+ *
+ * The log-likelihood ratio uses the normal approximation over the score per
+ * game, with wins, losses and ties counted separately so that ties lower the
+ * variance. Games played in colour-swapped pairs from an OpeningSuite are
+ * tested per pair, with the five possible pair scores counted separately.
+ * One virtual win and one virtual loss are added to the results, a
+ * run of identical results has no variance and would otherwise decide the
+ * test after a single game.
+ */
+public class Sprt {
+
+    public enum Decision {
+        Undecided,
+        H0,
+        H1
+    }
+
+    private final double elo0;
+    private final double elo1;
+    private final double score0;
+    private final double score1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * @param elo0 Elo difference of bot1 over bot2 under H0, e.g. 0
+     * @param elo1 Elo difference of bot1 over bot2 under H1, larger than elo0, e.g. 10
+     * @param alpha chance of accepting H1 when H0 is true
+     * @param beta chance of accepting H0 when H1 is true
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        if (!(elo1 > elo0))
+            throw new IllegalArgumentException("elo1 must be larger than elo0, was " + elo0 + " and " + elo1);
+        if (!(alpha > 0 && alpha < 1 && beta > 0 && beta < 1))
+            throw new IllegalArgumentException("alpha and beta must be between 0 and 1, was " + alpha + " and " + beta);
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        score0 = expectedScore(elo0);
+        score1 = expectedScore(elo1);
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * @param wins games won by bot1
+     * @param losses games lost by bot1
+     * @param ties games tied
+     * @return the log-likelihood ratio of H1 over H0
+     */
+    public double llr(long wins, long losses, long ties) {
+        return llr(new double[]{0, 0.5, 1}, new double[]{losses + 1, ties, wins + 1});
+    }
+
+    /**
+     * Log-likelihood ratio for games played in pairs from the same opening
+     * with the colours swapped, where every pair is one sample. One virtual
+     * pair won twice and one lost twice are added, as for single games.
+     * @param pairs number of pairs in which bot1 scored 0, 0.5, 1, 1.5 and 2 points
+     * @return the log-likelihood ratio of H1 over H0
+     */
+    public double llrPairs(long[] pairs) {
+        return llr(new double[]{0, 0.25, 0.5, 0.75, 1},
+                new double[]{pairs[0] + 1, pairs[1], pairs[2], pairs[3], pairs[4] + 1});
+    }
+
+    /**
+     * @param scores the possible scores of a sample, from 0 to 1
+     * @param counts number of samples with each score
+     */
+    private double llr(double[] scores, double[] counts) {
+        double samples = 0;
+        double total = 0;
+        for (int i = 0; i < scores.length; i++) {
+            samples += counts[i];
+            total += counts[i] * scores[i];
+        }
+        double score = total / samples;
+        double variance = 0;
+        for (int i = 0; i < scores.length; i++)
+            variance += counts[i] * (scores[i] - score) * (scores[i] - score);
+        variance /= samples;
+        return samples * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * @param wins games won by bot1
+     * @param losses games lost by bot1
+     * @param ties games tied
+     * @return the decision the results allow
+     */
+    public Decision decide(long wins, long losses, long ties) {
+        return decide(llr(wins, losses, ties));
+    }
+
+    /**
+     * @param pairs number of pairs in which bot1 scored 0, 0.5, 1, 1.5 and 2 points
+     * @return the decision the results allow
+     */
+    public Decision decidePairs(long[] pairs) {
+        return decide(llrPairs(pairs));
+    }
+
+    private Decision decide(double llr) {
+        if (llr >= upperBound)
+            return Decision.H1;
+        if (llr <= lowerBound)
+            return Decision.H0;
+        return Decision.Undecided;
+    }
+
+    public double getElo0() {
+        return elo0;
+    }
+
+    public double getElo1() {
+        return elo1;
+    }
+
+    /**
+     * @return the log-likelihood ratio at or below which H0 is accepted
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return the log-likelihood ratio at or above which H1 is accepted
+     */
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+}
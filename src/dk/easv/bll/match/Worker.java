@@ -0,0 +1,207 @@
+package dk.easv.bll.match;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.stats.GameResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays games for a Coordinator, usually in a JVM of its own.
+ * The worker connects to the coordinator, gets the bots and match settings
+ * from it and plays the batches it is handed on a MatchRunner, on as many
+ * threads as there are cores unless told otherwise. The bot classes must be
+ * on the class path of the worker.
+ */
+public class Worker {
+
+    private final String host;
+    private final int port;
+    private volatile int threads = MatchRunner.CORES;
+    private volatile int concurrentGames = 0;
+
+    /**
+     * @param host host of the coordinator
+     * @param port port of the coordinator
+     */
+    public Worker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param threads number of threads to play the games on
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads must be positive, was " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * @param concurrentGames play up to this many games at once, as MatchRunner.startConcurrent does, 0 to use the threads
+     */
+    public void setConcurrentGames(int concurrentGames) {
+        if (concurrentGames < 0)
+            throw new IllegalArgumentException("Number of concurrent games must not be negative, was " + concurrentGames);
+        this.concurrentGames = concurrentGames;
+    }
+
+    /**
+     * Connects and plays the batches the coordinator hands out, until it says the match is over.
+     * @return number of games played
+     * @throws IOException if the connection fails, or the bots can not be loaded
+     */
+    public long run() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(Protocol.MAGIC);
+            out.writeInt(Protocol.VERSION);
+            out.flush();
+
+            Protocol.expect(Protocol.CONFIG, in.readByte());
+            String bot1Name = in.readUTF();
+            String bot2Name = in.readUTF();
+            int timePerMove = in.readInt();
+            long seed = in.readLong();
+            int openingCount = in.readInt();
+            List<byte[]> openings = new ArrayList<>();
+            for (int i = 0; i < openingCount; i++) {
+                byte[] opening = new byte[in.readUnsignedByte()];
+                in.readFully(opening);
+                openings.add(opening);
+            }
+
+            Class<? extends IBot> bot1;
+            Class<? extends IBot> bot2;
+            String[] names;
+            OpeningSuite suite;
+            try {
+                bot1 = Class.forName(bot1Name).asSubclass(IBot.class);
+                bot2 = Class.forName(bot2Name).asSubclass(IBot.class);
+                names = new String[]{MatchRunner.newBot(bot1).getBotName(), MatchRunner.newBot(bot2).getBotName()};
+                suite = openings.isEmpty() ? null : new OpeningSuite(openings);
+            }
+            catch (ClassNotFoundException | RuntimeException ex) {
+                String message = ex instanceof ClassNotFoundException ? "Unknown bot " + ex.getMessage() : ex.getMessage();
+                out.writeByte(Protocol.ERROR);
+                out.writeUTF(String.valueOf(message));
+                out.flush();
+                throw new IOException("Could not start: " + message, ex);
+            }
+            out.writeByte(Protocol.READY);
+            out.writeUTF(names[0]);
+            out.writeUTF(names[1]);
+            out.flush();
+
+            return playBatches(in, out, bot1, bot2, timePerMove, seed, suite);
+        }
+        catch (EOFException ex) {
+            throw new IOException("The coordinator closed the connection", ex);
+        }
+    }
+
+    private long playBatches(DataInputStream in, DataOutputStream out, Class<? extends IBot> bot1,
+                             Class<? extends IBot> bot2, int timePerMove, long seed, OpeningSuite suite) throws IOException {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "worker-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            try {
+                synchronized (out) {
+                    out.writeByte(Protocol.HEARTBEAT);
+                    out.flush();
+                }
+            }
+            catch (IOException ex) {
+                // Reading the next batch fails as well, that ends the worker
+            }
+        }, Protocol.HEARTBEAT_MILLIS, Protocol.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        ForkJoinPool pool = concurrentGames > 0 ? null : new ForkJoinPool(threads);
+        long played = 0;
+        try {
+            byte type;
+            while ((type = in.readByte()) != Protocol.DONE) {
+                Protocol.expect(Protocol.BATCH, type);
+                long first = in.readLong();
+                int games = in.readInt();
+                MatchRunner batch = new MatchRunner(bot1, bot2, first, games);
+                batch.setTimePerMove(timePerMove);
+                batch.setSeed(seed);
+                batch.setOpeningSuite(suite);
+                BatchSender sender = new BatchSender(out, batch);
+                batch.setListener(sender);
+                if (pool == null)
+                    batch.startConcurrent(concurrentGames);
+                else
+                    batch.start(pool);
+                batch.await();
+                if (sender.failure != null)
+                    throw sender.failure;
+                synchronized (out) {
+                    out.flush();
+                }
+                played += batch.getGamesPlayed();
+            }
+            return played;
+        }
+        finally {
+            heartbeat.shutdownNow();
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes the result of every game of a batch to the coordinator. The
+     * results are flushed with the heartbeats and at the end of the batch.
+     */
+    private static class BatchSender implements MatchListener {
+        private final DataOutputStream out;
+        private final MatchRunner batch;
+        private volatile IOException failure = null;
+
+        BatchSender(DataOutputStream out, MatchRunner batch) {
+            this.out = out;
+            this.batch = batch;
+        }
+
+        @Override
+        public void gameFinished(GameResult result) {
+            byte[] moves = result.getMoves();
+            try {
+                synchronized (out) {
+                    out.writeByte(Protocol.RESULT);
+                    out.writeLong(result.getGameNumber());
+                    out.writeByte(result.getWinner().ordinal());
+                    out.writeByte(moves.length);
+                    out.write(moves);
+                    out.writeLong(result.getOverrunMillis());
+                }
+            }
+            catch (IOException ex) {
+                failure = ex;
+                batch.cancel();
+            }
+        }
+
+        @Override
+        public void matchFinished(MatchRunner match) {
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package dk.easv.bll.sim;
+
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.field.IBitboard;
+import dk.easv.bll.game.RulesTable;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Plays many games side by side, for bulk random playouts.
+ * The games are stored in primitive arrays, one entry per game, instead of
+ * one object graph per game, and every step plays one move in all games
+ * still going on. The rules and results are the same as for the Simulator.
+ *
+ * Moves are cell indexes x*9 + y. A batch is not thread safe, give every
+ * thread its own batch.
+ */
+public final class BatchSimulator {
+
+    private final int size;
+    // Cells per player, micro board m of game g at index g*9 + m
+    private final int[] cells0;
+    private final int[] cells1;
+    private final int[] won0;
+    private final int[] won1;
+    private final int[] tied;
+    private final int[] active;
+    private final int[] moveNumber;
+    private final int[] result;
+    private final Game view = new Game();
+    private int running;
+
+    /**
+     * @param size number of games in the batch
+     */
+    public BatchSimulator(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Batch size must be positive, was " + size);
+        this.size = size;
+        cells0 = new int[size * 9];
+        cells1 = new int[size * 9];
+        won0 = new int[size];
+        won1 = new int[size];
+        tied = new int[size];
+        active = new int[size];
+        moveNumber = new int[size];
+        result = new int[size];
+        reset();
+    }
+
+    /**
+     * Starts a new game in every slot of the batch.
+     */
+    public void reset() {
+        Arrays.fill(cells0, 0);
+        Arrays.fill(cells1, 0);
+        Arrays.fill(won0, 0);
+        Arrays.fill(won1, 0);
+        Arrays.fill(tied, 0);
+        Arrays.fill(active, RulesTable.FULL_MASK);
+        Arrays.fill(moveNumber, 0);
+        Arrays.fill(result, Simulator.ACTIVE);
+        running = size;
+    }
+
+    /**
+     * Plays one move in every game still going on.
+     * @param moves the cell index to play in each game, entries of finished games are ignored
+     * @return Number of games still going on
+     * @throws IllegalArgumentException if a move is not legal, no game is played on then
+     */
+    public int step(int[] moves) {
+        // Check every move first, so an illegal move does not leave the batch half stepped
+        for (int game = 0; game < size; game++) {
+            if (result[game] == Simulator.ACTIVE && !isLegal(game, moves[game]))
+                throw new IllegalArgumentException("Illegal move " + moves[game] + " in game " + game);
+        }
+        for (int game = 0; game < size; game++) {
+            if (result[game] == Simulator.ACTIVE)
+                play(game, moves[game]);
+        }
+        return running;
+    }
+
+    /**
+     * Plays one random legal move in every game still going on.
+     * @param random source of randomness
+     * @return Number of games still going on
+     */
+    public int stepRandom(Random random) {
+        for (int game = 0; game < size; game++) {
+            if (result[game] == Simulator.ACTIVE)
+                play(game, randomMove(game, random));
+        }
+        return running;
+    }
+
+    /**
+     * Plays random moves until every game in the batch is over.
+     * @param random source of randomness
+     */
+    public void playout(Random random) {
+        while (running > 0)
+            stepRandom(random);
+    }
+
+    /**
+     * Writes the legal moves of one game into the buffer, in the same order as
+     * IField.getAvailableMoves().
+     * @param game index of the game
+     * @param buffer Buffer with room for at least 81 moves
+     * @return Number of moves written, each as the cell index x*9 + y
+     */
+    public int legalMoves(int game, int[] buffer) {
+        if (result[game] != Simulator.ACTIVE)
+            return 0;
+        int count = 0;
+        int base = game * 9;
+        for (int x = 0; x < 9; x++) {
+            int rowBits = 7 << ((x % 3) * 3);
+            for (int microY = 0; microY < 3; microY++) {
+                int micro = (x / 3) * 3 + microY;
+                if ((active[game] & (1 << micro)) == 0)
+                    continue;
+                int free = ~(cells0[base + micro] | cells1[base + micro]) & rowBits;
+                while (free != 0) {
+                    int bit = Integer.numberOfTrailingZeros(free);
+                    free &= free - 1;
+                    buffer[count++] = x * 9 + microY * 3 + bit % 3;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param game index of the game
+     * @param cell cell index x*9 + y
+     * @return true if the player to move in the game may play the cell
+     */
+    public boolean isLegal(int game, int cell) {
+        if (result[game] != Simulator.ACTIVE || cell < 0 || cell >= 81)
+            return false;
+        int x = cell / 9;
+        int y = cell % 9;
+        int micro = BitField.microIndex(x, y);
+        int index = game * 9 + micro;
+        return (active[game] & (1 << micro)) != 0
+                && ((cells0[index] | cells1[index]) & (1 << BitField.cellIndex(x, y))) == 0;
+    }
+
+    /**
+     * Picks a legal move uniformly at random without building the move list.
+     */
+    private int randomMove(int game, Random random) {
+        int base = game * 9;
+        int count = 0;
+        int boards = active[game];
+        while (boards != 0) {
+            int micro = Integer.numberOfTrailingZeros(boards);
+            boards &= boards - 1;
+            count += 9 - Integer.bitCount(cells0[base + micro] | cells1[base + micro]);
+        }
+
+        int pick = random.nextInt(count);
+        boards = active[game];
+        while (true) {
+            int micro = Integer.numberOfTrailingZeros(boards);
+            boards &= boards - 1;
+            int free = RulesTable.FULL_MASK & ~(cells0[base + micro] | cells1[base + micro]);
+            int freeCount = Integer.bitCount(free);
+            if (pick < freeCount) {
+                for (; pick > 0; pick--)
+                    free &= free - 1;
+                int bit = Integer.numberOfTrailingZeros(free);
+                return ((micro / 3) * 3 + bit / 3) * 9 + (micro % 3) * 3 + bit % 3;
+            }
+            pick -= freeCount;
+        }
+    }
+
+    /**
+     * Same rules as Simulator.play, on the arrays of one game.
+     */
+    private void play(int game, int cell) {
+        int x = cell / 9;
+        int y = cell % 9;
+        int micro = BitField.microIndex(x, y);
+        int index = game * 9 + micro;
+        int player = moveNumber[game] & 1;
+        int[] cells = player == 0 ? cells0 : cells1;
+        cells[index] |= 1 << BitField.cellIndex(x, y);
+        moveNumber[game]++;
+
+        int decided = won0[game] | won1[game] | tied[game];
+        if ((decided & (1 << micro)) == 0) {
+            if (RulesTable.isLine(cells[index])) {
+                if (player == 0)
+                    won0[game] |= 1 << micro;
+                else
+                    won1[game] |= 1 << micro;
+            }
+            else if (RulesTable.isFull(cells0[index] | cells1[index]))
+                tied[game] |= 1 << micro;
+            decided = won0[game] | won1[game] | tied[game];
+
+            view.game = game;
+            if (RulesTable.isLine(player == 0 ? won0[game] : won1[game]))
+                finish(game, player);
+            else if (RulesTable.isFull(decided) || RulesTable.isDeadDraw(view))
+                finish(game, Simulator.TIE);
+        }
+
+        int next = BitField.cellIndex(x, y);
+        if ((decided & (1 << next)) == 0)
+            active[game] = 1 << next;
+        else
+            active[game] = RulesTable.FULL_MASK & ~decided;
+    }
+
+    private void finish(int game, int outcome) {
+        result[game] = outcome;
+        running--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of games still going on
+     */
+    public int getRunning() {
+        return running;
+    }
+
+    /**
+     * @param game index of the game
+     * @return ACTIVE while the game goes on, otherwise 0 or 1 for the winner, or TIE
+     */
+    public int getResult(int game) {
+        return result[game];
+    }
+
+    /**
+     * @param game index of the game
+     * @return number of moves played in the game
+     */
+    public int getMoveNumber(int game) {
+        return moveNumber[game];
+    }
+
+    /**
+     * Counts the results of the batch.
+     * @param counts array of length 3, filled with wins of player 0, wins of player 1 and ties
+     */
+    public void countResults(int[] counts) {
+        counts[0] = 0;
+        counts[1] = 0;
+        counts[Simulator.TIE] = 0;
+        for (int game = 0; game < size; game++) {
+            if (result[game] != Simulator.ACTIVE)
+                counts[result[game]]++;
+        }
+    }
+
+    /**
+     * The masks of one game, so the rules tables can read it without copying.
+     */
+    private final class Game implements IBitboard {
+        int game;
+
+        @Override
+        public int getCells(int player, int micro) {
+            return player == 0 ? cells0[game * 9 + micro] : cells1[game * 9 + micro];
+        }
+
+        @Override
+        public int getOccupied(int micro) {
+            return cells0[game * 9 + micro] | cells1[game * 9 + micro];
+        }
+
+        @Override
+        public int getWonMask(int player) {
+            return player == 0 ? won0[game] : won1[game];
+        }
+
+        @Override
+        public int getTiedMask() {
+            return tied[game];
+        }
+
+        @Override
+        public int getActiveMask() {
+            return active[game];
+        }
+    }
+}
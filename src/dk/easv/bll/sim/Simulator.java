@@ -0,0 +1,258 @@
+package dk.easv.bll.sim;
+
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.field.FieldSnapshot;
+import dk.easv.bll.field.IBitboard;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.RulesTable;
+import dk.easv.bll.game.Zobrist;
+import dk.easv.bll.move.IMove;
+
+import java.util.Random;
+
+/**
+ * Fast game engine for bots that simulate games, e.g. random playouts or tree search.
+ * It plays by the same rules as the GameManager, on a BitField, and does not
+ * allocate while playing: moves are cell indexes x*9 + y, legal moves are
+ * written into a buffer and a playout reuses the buffer of the simulator.
+ *
+ * A simulator is not thread safe, give every thread its own and reuse it with
+ * reset or copyFrom.
+ */
+public final class Simulator {
+
+    /**
+     * Result of a game that is still going on.
+     */
+    public static final int ACTIVE = -1;
+    /**
+     * Result of a tied game, a won game has the id of the winner, 0 or 1.
+     */
+    public static final int TIE = 2;
+
+    private final BitField field = new BitField();
+    private final int[] moves = new int[81];
+    private int currentPlayer;
+    private int moveNumber;
+    private int roundNumber;
+    private int result = ACTIVE;
+
+    /**
+     * Creates a simulator at the start of a game.
+     */
+    public Simulator() {
+    }
+
+    /**
+     * Creates a simulator at the given position.
+     * @param state the state to start from, e.g. the state handed to a bot
+     */
+    public Simulator(IGameState state) {
+        reset(state);
+    }
+
+    /**
+     * Goes back to the start of a game.
+     */
+    public void reset() {
+        field.clearBoard();
+        currentPlayer = 0;
+        moveNumber = 0;
+        roundNumber = 0;
+        result = ACTIVE;
+    }
+
+    /**
+     * Moves the simulator to the given position. The player to move is taken
+     * from the move number and the result is worked out from the macroboard.
+     * @param state the state to copy
+     */
+    public void reset(IGameState state) {
+        IField source = state.getField();
+        field.copyFrom(source instanceof IBitboard ? (IBitboard) source : FieldSnapshot.of(source));
+        moveNumber = state.getMoveNumber();
+        roundNumber = state.getRoundNumber();
+        currentPlayer = moveNumber % 2;
+        if (RulesTable.isLine(field.getWonMask(0)))
+            result = 0;
+        else if (RulesTable.isLine(field.getWonMask(1)))
+            result = 1;
+        else if (RulesTable.isFull(field.getDecidedMask()) || RulesTable.isDeadDraw(field))
+            result = TIE;
+        else
+            result = ACTIVE;
+    }
+
+    /**
+     * Copies the position of another simulator, without any allocation.
+     * @param other the simulator to copy
+     */
+    public void copyFrom(Simulator other) {
+        field.copyFrom(other.field);
+        currentPlayer = other.currentPlayer;
+        moveNumber = other.moveNumber;
+        roundNumber = other.roundNumber;
+        result = other.result;
+    }
+
+    /**
+     * @param cell cell index x*9 + y
+     * @return true if the player to move may play the cell
+     */
+    public boolean isLegal(int cell) {
+        if (result != ACTIVE || cell < 0 || cell >= 81)
+            return false;
+        int x = cell / 9;
+        int y = cell % 9;
+        int micro = BitField.microIndex(x, y);
+        return (field.getActiveMask() & (1 << micro)) != 0
+                && (field.getOccupied(micro) & (1 << BitField.cellIndex(x, y))) == 0;
+    }
+
+    /**
+     * Plays a move for the player to move.
+     * @param cell cell index x*9 + y
+     * @return true if the move was played, false if it was not legal
+     */
+    public boolean play(int cell) {
+        if (!isLegal(cell))
+            return false;
+        playLegal(cell);
+        return true;
+    }
+
+    /**
+     * Plays a move for the player to move.
+     * @param move the move
+     * @return true if the move was played, false if it was not legal
+     */
+    public boolean play(IMove move) {
+        return play(move.getX() * 9 + move.getY());
+    }
+
+    /**
+     * Same rules as GameManager.updateGame on a BitField, without the legality check.
+     */
+    private void playLegal(int cell) {
+        int x = cell / 9;
+        int y = cell % 9;
+        int micro = BitField.microIndex(x, y);
+        field.place(x, y, currentPlayer);
+        moveNumber++;
+        if (moveNumber % 2 == 0)
+            roundNumber++;
+
+        if ((field.getDecidedMask() & (1 << micro)) == 0) {
+            if (RulesTable.isLine(field.getCells(currentPlayer, micro)))
+                field.setWon(micro, currentPlayer);
+            else if (RulesTable.isFull(field.getOccupied(micro)))
+                field.setTied(micro);
+
+            if (RulesTable.isLine(field.getWonMask(currentPlayer)))
+                result = currentPlayer;
+            else if (RulesTable.isFull(field.getDecidedMask()) || RulesTable.isDeadDraw(field))
+                result = TIE;
+        }
+
+        int next = BitField.cellIndex(x, y);
+        int decided = field.getDecidedMask();
+        if ((decided & (1 << next)) == 0)
+            field.setActiveMask(1 << next);
+        else
+            field.setActiveMask(RulesTable.FULL_MASK & ~decided);
+
+        currentPlayer ^= 1;
+    }
+
+    /**
+     * Writes the legal moves into the buffer, in the same order as
+     * IField.getAvailableMoves(). No moves are legal once the game is over.
+     * @param buffer Buffer with room for at least 81 moves
+     * @return Number of moves written, each as the cell index x*9 + y
+     */
+    public int legalMoves(int[] buffer) {
+        if (result != ACTIVE)
+            return 0;
+        return field.getAvailableMoves(buffer);
+    }
+
+    /**
+     * @return Number of legal moves
+     */
+    public int legalMoveCount() {
+        if (result != ACTIVE)
+            return 0;
+        return field.availableMoveCount();
+    }
+
+    /**
+     * Plays one random legal move.
+     * @param random source of randomness
+     * @return the cell index of the move, or -1 if the game is over
+     */
+    public int playRandom(Random random) {
+        int count = legalMoves(moves);
+        if (count == 0)
+            return -1;
+        int cell = moves[random.nextInt(count)];
+        playLegal(cell);
+        return cell;
+    }
+
+    /**
+     * Plays random moves until the game is over.
+     * @param random source of randomness
+     * @return the result, 0 or 1 for the winner, or TIE
+     */
+    public int playout(Random random) {
+        while (result == ACTIVE) {
+            int count = field.getAvailableMoves(moves);
+            playLegal(moves[random.nextInt(count)]);
+        }
+        return result;
+    }
+
+    public boolean isGameOver() {
+        return result != ACTIVE;
+    }
+
+    /**
+     * @return ACTIVE while the game goes on, otherwise 0 or 1 for the winner, or TIE
+     */
+    public int getResult() {
+        return result;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    /**
+     * The live field of the simulator, it changes with every move.
+     * @return the field
+     */
+    public IField getField() {
+        return field;
+    }
+
+    /**
+     * @return a new GameState on a copy of the field, e.g. to store in a search tree
+     */
+    public GameState toGameState() {
+        GameState state = new GameState(new BitField(field));
+        state.setMoveNumber(moveNumber);
+        state.setRoundNumber(roundNumber);
+        state.setZobristKey(Zobrist.keyOf(state));
+        return state;
+    }
+}
@@ -0,0 +1,281 @@
+package dk.easv.dal;
+
+import dk.easv.bll.game.stats.GameResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of played games, for keeping the moves of very many games.
+ * A log is three files next to each other:
+ * <ul>
+ * <li>the log itself, a file header followed by one record per game: a
+ * marker byte, the winner, the move count, the ids of the two bots, the seed
+ * and then one byte per move, the cell index x*9 + y. That is 15 bytes plus
+ * the moves per game.</li>
+ * <li>the index, file name + ".idx", the position of every game in the log
+ * as a long, so game n is found without reading the games before it.</li>
+ * <li>the bot names, file name + ".bots", one name per line. The line number
+ * is the id the game records use.</li>
+ * </ul>
+ * The log and the index are written through memory-mapped segments, so
+ * appending a game is a few puts into mapped memory and creates no garbage.
+ * The files grow a segment at a time and the unused end of the last segment
+ * is left empty, readers know where the games end from the index.
+ *
+ * A game is written before its index entry, so a game that is in the index
+ * is complete, even if the writing process died. Opening an existing log
+ * appends to it. Only one GameLog may write to a log at a time.
+ */
+public class GameLog implements Closeable {
+
+    static final byte[] MAGIC = {'U', 'T', 'T', 'T', 'L', 'O', 'G', 1};
+    static final byte GAME_MARKER = 'G';
+    static final int RECORD_HEADER_BYTES = 15;
+    static final int INDEX_ENTRY_BYTES = 8;
+    static final String INDEX_SUFFIX = ".idx";
+    static final String BOTS_SUFFIX = ".bots";
+
+    private static final long LOG_SEGMENT_BYTES = 64L << 20;
+    private static final long INDEX_SEGMENT_BYTES = 8L << 20;
+
+    private final Path botsFile;
+    private final Map<String, Integer> botIds = new HashMap<>();
+    private final List<String> botNames;
+    private final MappedAppender log;
+    private final MappedAppender index;
+    private long games;
+
+    /**
+     * Opens the log for appending, creates it if it does not exist.
+     * @param file the log file, the index and bot names are stored next to it
+     * @throws IOException if the files can not be opened or are not a game log
+     */
+    public GameLog(Path file) throws IOException {
+        botsFile = Paths.get(file + BOTS_SUFFIX);
+        botNames = readBotNames(botsFile);
+        for (int i = 0; i < botNames.size(); i++)
+            botIds.put(botNames.get(i), i);
+
+        FileChannel logChannel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indexChannel;
+        try {
+            indexChannel = FileChannel.open(Paths.get(file + INDEX_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        catch (IOException ex) {
+            logChannel.close();
+            throw ex;
+        }
+
+        try {
+            long end;
+            if (logChannel.size() == 0) {
+                end = 0;
+            }
+            else {
+                checkMagic(logChannel, file);
+                games = countGames(indexChannel);
+                end = games == 0 ? MAGIC.length : endOfGame(logChannel, indexChannel, games - 1);
+            }
+            log = new MappedAppender(logChannel, end, LOG_SEGMENT_BYTES);
+            index = new MappedAppender(indexChannel, games * INDEX_ENTRY_BYTES, INDEX_SEGMENT_BYTES);
+            if (end == 0) {
+                log.reserve(MAGIC.length);
+                log.buffer.put(MAGIC);
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            logChannel.close();
+            indexChannel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends a game to the log.
+     * @param player0 name of the bot that moved first
+     * @param player1 name of the bot that moved second
+     * @param seed the seed the game was played with, 0 if it had none
+     * @param winner the outcome
+     * @param moves the moves, each as the cell index x*9 + y
+     * @param moveCount number of moves in the array
+     * @return the game number of the game in the log
+     * @throws IOException if the log could not grow
+     */
+    public synchronized long append(String player0, String player1, long seed, GameResult.Winner winner,
+                                    byte[] moves, int moveCount) throws IOException {
+        if (moveCount < 0 || moveCount > 81)
+            throw new IllegalArgumentException("A game has 0 to 81 moves, was " + moveCount);
+        int id0 = botId(player0);
+        int id1 = botId(player1);
+
+        long position = log.position;
+        log.reserve(RECORD_HEADER_BYTES + moveCount);
+        log.buffer.put(GAME_MARKER)
+                .put((byte) winner.ordinal())
+                .put((byte) moveCount)
+                .putShort((short) id0)
+                .putShort((short) id1)
+                .putLong(seed)
+                .put(moves, 0, moveCount);
+
+        index.reserve(INDEX_ENTRY_BYTES);
+        index.buffer.putLong(position);
+        return games++;
+    }
+
+    /**
+     * Appends a game played by the GamePlayer, which records the moves and the seed.
+     * @param result the result of the game
+     * @return the game number of the game in the log
+     * @throws IOException if the log could not grow
+     */
+    public long append(GameResult result) throws IOException {
+        byte[] moves = result.getMoves();
+        if (moves == null)
+            throw new IllegalArgumentException("The moves of the game were not recorded");
+        return append(result.getPlayer0(), result.getPlayer1(), result.getSeed(), result.getWinner(), moves, moves.length);
+    }
+
+    /**
+     * @return number of games in the log
+     */
+    public synchronized long size() {
+        return games;
+    }
+
+    /**
+     * Writes the mapped segments to the disk.
+     */
+    public synchronized void flush() {
+        log.force();
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        try {
+            log.channel.close();
+        }
+        finally {
+            index.channel.close();
+        }
+    }
+
+    private int botId(String name) throws IOException {
+        Integer id = botIds.get(name);
+        if (id == null) {
+            if (botNames.size() > 0xFFFF)
+                throw new IllegalStateException("Too many different bot names in one log");
+            if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0)
+                throw new IllegalArgumentException("Bot names in a log must be on one line: " + name);
+            // The name is on disk before any game that refers to it
+            Files.write(botsFile, (name + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            id = botNames.size();
+            botIds.put(name, id);
+            botNames.add(name);
+        }
+        return id;
+    }
+
+    static List<String> readBotNames(Path botsFile) throws IOException {
+        if (!Files.exists(botsFile))
+            return new ArrayList<>();
+        return new ArrayList<>(Files.readAllLines(botsFile, StandardCharsets.UTF_8));
+    }
+
+    static void checkMagic(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length);
+        channel.read(header, 0);
+        if (header.position() != MAGIC.length || !header.flip().equals(ByteBuffer.wrap(MAGIC)))
+            throw new IOException(file + " is not a game log");
+    }
+
+    /**
+     * The index is filled from the start, the unused end of its last segment
+     * is zero, and no game is at position 0, so the number of games is where
+     * the first zero entry is.
+     */
+    static long countGames(FileChannel index) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        long low = 0;
+        long high = index.size() / INDEX_ENTRY_BYTES;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (readLong(index, middle * INDEX_ENTRY_BYTES, entry) != 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    static long readLong(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file at " + position);
+        }
+        return buffer.getLong(0);
+    }
+
+    private static long endOfGame(FileChannel log, FileChannel index, long game) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        long position = readLong(index, game * INDEX_ENTRY_BYTES, buffer);
+        buffer.clear().limit(3);
+        log.read(buffer, position);
+        if (buffer.position() != 3 || buffer.get(0) != GAME_MARKER)
+            throw new IOException("The index does not match the log at game " + game);
+        return position + RECORD_HEADER_BYTES + (buffer.get(2) & 0xFF);
+    }
+
+    /**
+     * Writes to the end of a file through a mapped segment, and maps the next
+     * segment when a write does not fit in the current one.
+     */
+    private static final class MappedAppender {
+        final FileChannel channel;
+        final long segmentBytes;
+        MappedByteBuffer buffer;
+        long position;
+
+        MappedAppender(FileChannel channel, long position, long segmentBytes) {
+            this.channel = channel;
+            this.position = position;
+            this.segmentBytes = segmentBytes;
+        }
+
+        /**
+         * Makes room for the next write and advances the position past it.
+         */
+        void reserve(int bytes) throws IOException {
+            if (buffer == null || buffer.remaining() < bytes) {
+                if (buffer != null)
+                    buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes);
+            }
+            position += bytes;
+        }
+
+        void force() {
+            if (buffer != null)
+                buffer.force();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package dk.easv.dal;
+
+import dk.easv.bll.game.stats.GameResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads the games of a GameLog, either one after the other or by game number.
+ * The log is read through memory-mapped segments into a reusable GameRecord:
+ * <pre>
+ * GameRecord record = new GameRecord();
+ * try (GameLogReader reader = new GameLogReader(path)) {
+ *     while (reader.next(record)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * The reader sees the games that were in the log when it was opened, a log
+ * can be read while it is being written.
+ */
+public class GameLogReader implements Closeable {
+
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final GameResult.Winner[] WINNERS = GameResult.Winner.values();
+
+    private final Path file;
+    private final FileChannel log;
+    private final FileChannel index;
+    private final List<String> botNames;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(GameLog.INDEX_ENTRY_BYTES);
+    private final long games;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long position = GameLog.MAGIC.length;
+    private long gameNumber = 0;
+
+    /**
+     * @param file the log file, as given to the GameLog that wrote it
+     * @throws IOException if the files can not be opened or are not a game log
+     */
+    public GameLogReader(Path file) throws IOException {
+        this.file = file;
+        log = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            index = FileChannel.open(Paths.get(file + GameLog.INDEX_SUFFIX), StandardOpenOption.READ);
+        }
+        catch (IOException ex) {
+            log.close();
+            throw ex;
+        }
+        try {
+            GameLog.checkMagic(log, file);
+            // The names are read after the index, every bot a game in the index refers to is in the file
+            games = GameLog.countGames(index);
+            botNames = GameLog.readBotNames(Paths.get(file + GameLog.BOTS_SUFFIX));
+        }
+        catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return number of games in the log
+     */
+    public long size() {
+        return games;
+    }
+
+    /**
+     * Reads the next game.
+     * @param record the record to fill
+     * @return false if there are no more games, the record is then unchanged
+     * @throws IOException if the log could not be read
+     */
+    public boolean next(GameRecord record) throws IOException {
+        if (gameNumber >= games)
+            return false;
+        map(GameLog.RECORD_HEADER_BYTES);
+        if (segment.get() != GameLog.GAME_MARKER)
+            throw new IOException("Corrupt game log " + file + " at game " + gameNumber);
+        GameResult.Winner winner = WINNERS[segment.get()];
+        int moveCount = segment.get() & 0xFF;
+        String player0 = botNames.get(segment.getShort() & 0xFFFF);
+        String player1 = botNames.get(segment.getShort() & 0xFFFF);
+        long seed = segment.getLong();
+        position += GameLog.RECORD_HEADER_BYTES;
+
+        map(moveCount);
+        segment.get(record.moveBuffer(), 0, moveCount);
+        position += moveCount;
+        record.set(gameNumber++, player0, player1, seed, winner, moveCount);
+        return true;
+    }
+
+    /**
+     * Moves the reader to a game, the next call to next reads it.
+     * @param game the game number, from 0 to size()
+     * @throws IOException if the index could not be read
+     */
+    public void seek(long game) throws IOException {
+        if (game < 0 || game > games)
+            throw new IndexOutOfBoundsException("Game " + game + " out of bounds for " + games + " games");
+        if (game == games) {
+            position = Long.MAX_VALUE;
+        }
+        else {
+            position = GameLog.readLong(index, game * GameLog.INDEX_ENTRY_BYTES, indexEntry);
+        }
+        gameNumber = game;
+    }
+
+    /**
+     * Reads a game by its number.
+     * @param game the game number, from 0 to size() - 1
+     * @param record the record to fill
+     * @throws IOException if the log could not be read
+     */
+    public void read(long game, GameRecord record) throws IOException {
+        if (game < 0 || game >= games)
+            throw new IndexOutOfBoundsException("Game " + game + " out of bounds for " + games + " games");
+        seek(game);
+        next(record);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            log.close();
+        }
+        finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Positions the segment at the read position, with at least the given
+     * number of bytes after it.
+     */
+    private void map(int bytes) throws IOException {
+        if (segment == null || position < segmentStart || position + bytes > segmentStart + segment.limit()) {
+            long length = Math.min(SEGMENT_BYTES, log.size() - position);
+            if (length < bytes)
+                throw new IOException("Unexpected end of game log " + file + " at game " + gameNumber);
+            segment = log.map(FileChannel.MapMode.READ_ONLY, position, length);
+            segmentStart = position;
+        }
+        segment.position((int) (position - segmentStart));
+    }
+}
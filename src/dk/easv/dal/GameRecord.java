@@ -0,0 +1,87 @@
+package dk.easv.dal;
+
+import dk.easv.bll.game.GameStateCodec;
+import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.move.IMove;
+
+/**
+ * One game read from a game log. The reader fills the same record again for
+ * every game, so reading many games allocates nothing per game.
+ */
+public class GameRecord {
+
+    private final byte[] moves = new byte[81];
+    private long gameNumber;
+    private String player0;
+    private String player1;
+    private long seed;
+    private GameResult.Winner winner;
+    private int moveCount;
+
+    void set(long gameNumber, String player0, String player1, long seed, GameResult.Winner winner, int moveCount) {
+        this.gameNumber = gameNumber;
+        this.player0 = player0;
+        this.player1 = player1;
+        this.seed = seed;
+        this.winner = winner;
+        this.moveCount = moveCount;
+    }
+
+    byte[] moveBuffer() {
+        return moves;
+    }
+
+    public long getGameNumber() {
+        return gameNumber;
+    }
+
+    public String getPlayer0() {
+        return player0;
+    }
+
+    public String getPlayer1() {
+        return player1;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public GameResult.Winner getWinner() {
+        return winner;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @param index index of the move, from 0 to getMoveCount() - 1
+     * @return the move as the cell index x*9 + y
+     */
+    public int getCell(int index) {
+        if (index < 0 || index >= moveCount)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + moveCount + " moves");
+        return moves[index];
+    }
+
+    /**
+     * @param index index of the move, from 0 to getMoveCount() - 1
+     * @return the move
+     */
+    public IMove getMove(int index) {
+        return GameStateCodec.fromByte((byte) getCell(index));
+    }
+
+    /**
+     * @return the record as a GameResult, with a copy of the moves
+     */
+    public GameResult toGameResult() {
+        GameResult result = new GameResult(player0, player1, winner, moveCount);
+        byte[] copy = new byte[moveCount];
+        System.arraycopy(moves, 0, copy, 0, moveCount);
+        result.setMoves(copy);
+        result.setSeed(seed);
+        return result;
+    }
+}
@@ -2,8 +2,9 @@ package dk.easv.gui;
 
 import com.jfoenix.controls.*;
 import dk.easv.bll.bot.IBot;
-import dk.easv.bll.game.GameManager;
 import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.match.MatchRunner;
+import dk.easv.bll.match.ResultCollector;
 import dk.easv.dal.DynamicBotClassHandler;
 import static dk.easv.gui.util.FontAwesomeHelper.getFontAwesomeIconFromPlayerId;
 import static dk.easv.dal.DynamicBotClassHandler.loadBotList;
@@ -21,17 +22,24 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.application.Platform;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.scene.layout.AnchorPane;
+import javafx.util.Duration;
 
 public class AppController implements Initializable {
 
+    private static final Duration PUBLISH_INTERVAL = Duration.millis(100);
+
     public JFXButton btnTrash;
     public JFXButton btnDiamond;
     @FXML
@@ -64,9 +72,8 @@ public class AppController implements Initializable {
     @FXML
     private AnchorPane anchorMain;
     private BooleanProperty simulation= new SimpleBooleanProperty(false);
-    private volatile int winsBot1 = 0;
-    private volatile int winsBot2 = 0;
-    private volatile int ties = 0;
+    private MatchRunner simulationRunner = null;
+    private Timeline simulationPublisher = null;
     @FXML
     private JFXToggleButton toggleBtnSim;
     @FXML
@@ -80,7 +87,7 @@ public class AppController implements Initializable {
         ObservableList<IBot> bots = FXCollections.observableArrayList();
         try {
             DynamicBotClassHandler.writeBotsToTextFile();
-            bots = loadBotList();
+            bots = FXCollections.observableArrayList(loadBotList());
         }
         catch (IOException | ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
             Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, null, ex);
@@ -146,17 +153,47 @@ public class AppController implements Initializable {
     }
 
     private void startSimulation(long amountOfSimulations) {
-        int multiCores = Runtime.getRuntime().availableProcessors();
-        winsBot1 = 0;
-        winsBot2 = 0;
-        ties = 0;
-        for (int i = 0; i < multiCores; i++) {
-            Thread t = new Thread(
-                    new Simulator(amountOfSimulations/multiCores, 
-                        this.comboBotsLeft.getValue().getClass(), 
-                        this.comboBotsRight.getValue().getClass()));
-            t.setDaemon(true);
-            t.start();
+        if (simulationRunner != null)
+            simulationRunner.cancel();
+        if (simulationPublisher != null)
+            simulationPublisher.stop();
+
+        String bot1Name = this.comboBotsLeft.getValue().getBotName();
+        String bot2Name = this.comboBotsRight.getValue().getBotName();
+        MatchRunner runner = new MatchRunner(
+                this.comboBotsLeft.getValue().getClass(),
+                this.comboBotsRight.getValue().getClass(),
+                amountOfSimulations);
+        ResultCollector collector = new ResultCollector();
+        runner.setListener(collector);
+
+        // The workers never touch the FX thread, the results are picked up a few times per second
+        simulationPublisher = new Timeline(new KeyFrame(PUBLISH_INTERVAL,
+                e -> publishSimulationResults(runner, collector, bot1Name, bot2Name)));
+        simulationPublisher.setCycleCount(Animation.INDEFINITE);
+        simulationRunner = runner;
+        runner.start();
+        simulationPublisher.play();
+    }
+
+    private void publishSimulationResults(MatchRunner runner, ResultCollector collector, String bot1Name, String bot2Name) {
+        boolean finished = collector.isMatchFinished();
+        List<GameResult> results = new ArrayList<>();
+        collector.drainTo(results);
+        if (!results.isEmpty())
+            statsModel.addGameResults(results);
+
+        String summary = bot1Name + " vs " +
+                    bot2Name + " | " +
+                    "w/w/t " + runner.getWinsBot1() + "/" +
+                    runner.getWinsBot2() + "/" + runner.getTies();
+        if (finished) {
+            statsModel.setLastSimulationResults(summary);
+            if (simulationPublisher != null && runner == simulationRunner)
+                simulationPublisher.stop();
+        }
+        else {
+            statsModel.setLastSimulationResults(summary + " | " + Math.round(runner.getProgress() * 100) + "%");
         }
     }
 
@@ -174,122 +211,6 @@ public class AppController implements Initializable {
         }
     }
     
-    private class Simulator implements Runnable{
-        private final long amountOfSimulations;
-        private IBot bot1;
-        private IBot bot2;
-        public Simulator(
-                long amountOfSimulations, 
-                Class<? extends IBot> b1, 
-                Class<? extends IBot> b2) {
-
-            this.amountOfSimulations=amountOfSimulations;
-            try {
-                this.bot1 = b1.newInstance();
-                this.bot2 = b2.newInstance();
-            }
-            catch (InstantiationException ex) {
-                Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            catch (IllegalAccessException ex) {
-                Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-        
-        @Override
-        public void run() {
-            for (int i = 0; i < amountOfSimulations/2; i++) {
-                BoardModel model = new BoardModel(bot1, bot2);
-                int currentPlayer = 0;
-                while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
-                    currentPlayer = model.getCurrentPlayer();
-                    Boolean valid = model.doMove();
-                    if (!valid) {
-                        throw new RuntimeException("Bot not following rules!");
-                    }
-                }
-                // There is a tie
-                if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
-                    this.addGameResult(
-                            new GameResult(
-                                    bot1.getBotName(), 
-                                    bot2.getBotName(), 
-                                    GameResult.Winner.tie));
-                    ties++;
-                }
-                else { // There is a winner
-                    GameResult.Winner winResult=null;
-                    if(currentPlayer==0) {
-                        winsBot1++;
-                        winResult = GameResult.Winner.player0;
-                    }
-                    else if(currentPlayer==1){
-                        winsBot2++;
-                        winResult = GameResult.Winner.player1;
-                    }
-                        
-                    this.addGameResult(
-                            new GameResult(
-                                    bot1.getBotName(), 
-                                    bot2.getBotName(), 
-                                    winResult));
-                }
-                
-            }
-            for (int i = 0; i < amountOfSimulations/2; i++) {
-                BoardModel model = new BoardModel(bot2, bot1);
-                int currentPlayer = 0;
-                while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
-                    currentPlayer = model.getCurrentPlayer();
-                    Boolean valid = model.doMove();
-                    if (!valid) {
-                        throw new RuntimeException("Bot not following rules!");
-                    }
-                }
-                // There is a tie
-                if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
-                    this.addGameResult(
-                            new GameResult(
-                                    bot2.getBotName(), 
-                                    bot1.getBotName(), 
-                                    GameResult.Winner.tie));
-                    ties++;
-                }
-                else { // There is a winner
-                    GameResult.Winner winResult=null;
-                    if(currentPlayer==0) {
-                        winsBot2++;
-                        winResult = GameResult.Winner.player0;
-                    }
-                    else if(currentPlayer==1){
-                        winsBot1++;
-                        winResult = GameResult.Winner.player1;
-                    }
-                        
-                    this.addGameResult(
-                            new GameResult(
-                                    bot2.getBotName(), 
-                                    bot1.getBotName(), 
-                                    winResult));
-                }
-                
-            }
-            setSimulationResults(bot1.getBotName() + " vs " +
-                        bot2.getBotName() + " | " +
-                        "w/w/t " + winsBot1 + "/" +
-                        winsBot2 + "/" + ties);
-        }
-        private void setSimulationResults(String result) {
-            Platform.runLater(()-> 
-                statsModel.setLastSimulationResults(result));
-        }
-        private void addGameResult(GameResult gameResult) {
-            Platform.runLater(()->
-                statsModel.addGameResult(gameResult));
-        }
-    }
     private class CustomIBotListCell extends ListCell<IBot> {
 
         @Override
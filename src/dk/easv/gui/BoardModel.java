@@ -2,6 +2,8 @@ package dk.easv.gui;
 
 
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.BitField;
+import dk.easv.bll.field.IField;
 import dk.easv.bll.game.*;
 import dk.easv.bll.game.IGameState;
 import dk.easv.bll.move.IMove;
@@ -26,10 +28,37 @@ public class BoardModel implements Observable{
         game.getCurrentState().setTimePerMove(TIME_PER_MOVE);
     }
     public BoardModel(IBot bot1, IBot bot2) {
-        game = new GameManager(new GameState(), bot1, bot2);
+        game = new GameManager(new GameState(new BitField()), bot1, bot2);
         game.getCurrentState().setTimePerMove(TIME_PER_MOVE);
     }
 
+    /**
+     * Starts a new game with the same players, the listeners stay registered.
+     */
+    public void reset() {
+        game.reset();
+        isForced = false;
+        notifyAllListeners();
+    }
+
+    /**
+     * Starts a new Human vs Bot game, the listeners stay registered.
+     */
+    public void reset(IBot bot, boolean humanPlaysFirst) {
+        game.reset(bot, humanPlaysFirst);
+        isForced = false;
+        notifyAllListeners();
+    }
+
+    /**
+     * Starts a new Bot vs Bot game, the listeners stay registered.
+     */
+    public void reset(IBot bot1, IBot bot2) {
+        game.reset(bot1, bot2);
+        isForced = false;
+        notifyAllListeners();
+    }
+
     private void notifyAllListeners(){
         for (InvalidationListener listener : listeners){
             listener.invalidated(this);
@@ -71,6 +100,23 @@ public class BoardModel implements Observable{
         return valid;
     }
 
+    /**
+     * Marks the micro boards that were still available as empty, so no more
+     * moves can be made on the board. Goes through setMacroboard, as the
+     * macroboard of a BitField is a read-only view.
+     */
+    public void lockBoard() {
+        IField field = game.getCurrentState().getField();
+        String[][] macroboard = field.getMacroboard();
+        String[][] locked = new String[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int k = 0; k < 3; k++) {
+                locked[i][k] = macroboard[i][k].equals(IField.AVAILABLE_FIELD) ? IField.EMPTY_FIELD : macroboard[i][k];
+            }
+        }
+        field.setMacroboard(locked);
+    }
+
     public String[][] getMacroboard()
     {
         return game.getCurrentState().getField().getMacroboard();
@@ -6,19 +6,24 @@
 package dk.easv.gui;
 
 import dk.easv.bll.game.stats.GameResult;
-import javafx.beans.Observable;
+import dk.easv.bll.game.stats.GameResultStore;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  *
  * @author jeppjleemoritzled
  */
 public class StatsModel {
-    private final ObservableList<GameResult> gameResults = 
-            FXCollections.observableArrayList();
+    private GameResultStore store = new GameResultStore();
+
+    private final GameResultList gameResults = new GameResultList();
     
     private final StringProperty lastSimulationResults = 
             new SimpleStringProperty("");
@@ -35,17 +40,80 @@ public class StatsModel {
         this.lastSimulationResults.set(lastSimulationResults);
     }
     
+    /**
+     * @return read-only view of the stored results, a GameResult is only
+     * built for the rows that are shown
+     */
     public ObservableList<GameResult> getGameResults(){
         return gameResults;
     }
+
+    public synchronized GameResultStore getStore() {
+        return store;
+    }
     
     public synchronized void addGameResult(GameResult gr) {
-        gameResults.add(gr);
+        int index = store.add(gr);
+        gameResults.added(index, index + 1);
     }
 
-    public void clear() {
-        gameResults.clear();
+    /**
+     * Adds many results as one change, so the list view is updated once.
+     * @param results the results to add
+     */
+    public synchronized void addGameResults(Collection<GameResult> results) {
+        int from = store.size();
+        for (GameResult result : results)
+            store.add(result);
+        gameResults.added(from, store.size());
+    }
+
+    public synchronized void clear() {
+        GameResultStore removed = store;
+        if (removed.size() == 0)
+            return;
+        store = new GameResultStore();
+        // The removed rows are only built if a listener asks for them
+        gameResults.removed(new AbstractList<GameResult>() {
+            @Override
+            public GameResult get(int index) {
+                return removed.get(index);
+            }
+
+            @Override
+            public int size() {
+                return removed.size();
+            }
+        });
+    }
+
+    /**
+     * Observable list over the store, for the list view in the stats window.
+     */
+    private class GameResultList extends ObservableListBase<GameResult> {
+
+        @Override
+        public GameResult get(int index) {
+            return store.get(index);
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        void added(int from, int to) {
+            if (from == to)
+                return;
+            beginChange();
+            nextAdd(from, to);
+            endChange();
+        }
+
+        void removed(List<GameResult> removedResults) {
+            beginChange();
+            nextRemove(0, removedResults);
+            endChange();
+        }
     }
-    
-    
 }
@@ -74,7 +74,7 @@ public class UTTTGameController implements Initializable {
 
             Thread t = new Thread(() -> {
                 while (model.getGameOverState() == GameManager.GameOverState.Active
-                        && model.getGameState().getField().getAvailableMoves().size()>0) {
+                        && model.getGameState().getField().availableMoveCount()>0) {
                     // FIX HERE, KEEPS ASKING FOR VALID MOVE IF BOT PLAYS INVALID
                     boolean isValid = doBotMove();
                     try {
@@ -272,15 +272,8 @@ public class UTTTGameController implements Initializable {
 
     private void checkAndLockIfGameEnd(int currentPlayer) {
         if (model.getGameOverState() != GameManager.GameOverState.Active) {
-            String[][] macroboard = model.getMacroboard();
             // Lock game
-            for (int i = 0; i < 3; i++) {
-                for (int k = 0; k < 3; k++) {
-                    if (macroboard[i][k].equals(IField.AVAILABLE_FIELD)) {
-                        macroboard[i][k] = IField.EMPTY_FIELD;
-                    }
-                }
-            }
+            model.lockBoard();
             if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
                 Platform.runLater(() -> showWinnerPane("TIE"));
             }